@@ -0,0 +1,146 @@
+package net.enderturret.patchedmod.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackLocationInfo;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.metadata.MetadataSectionSerializer;
+import net.minecraft.server.packs.repository.PackSource;
+import net.minecraft.server.packs.resources.IoSupplier;
+
+import net.enderturret.patchedmod.util.IPatchingPackResources;
+import net.enderturret.patchedmod.util.meta.PatchedMetadata;
+
+/**
+ * <p>A pack that keeps all of its files in memory.</p>
+ * <p>
+ * This stands in for the mixed-in vanilla packs, so it implements {@link IPatchingPackResources} itself.
+ * Its metadata is set up front instead of being read from a {@code pack.mcmeta}.
+ * </p>
+ * @author EnderTurret
+ */
+public final class MemoryPack implements PackResources, IPatchingPackResources {
+
+	private final PackLocationInfo location;
+	private final Map<PackType, Map<ResourceLocation, byte[]>> files = new EnumMap<>(PackType.class);
+	private final Map<String, byte[]> rootFiles = new HashMap<>();
+	private final Map<PackType, Integer> slots = new EnumMap<>(PackType.class);
+
+	private PatchedMetadata metadata;
+
+	public MemoryPack(String id, PatchedMetadata metadata) {
+		this.location = new PackLocationInfo(id, Component.literal(id), PackSource.BUILT_IN, Optional.empty());
+		this.metadata = metadata;
+	}
+
+	public MemoryPack add(PackType type, ResourceLocation location, String data) {
+		files.computeIfAbsent(type, k -> new HashMap<>()).put(location, data.getBytes(StandardCharsets.UTF_8));
+		return this;
+	}
+
+	public MemoryPack addRoot(String path, String data) {
+		rootFiles.put(path, data.getBytes(StandardCharsets.UTF_8));
+		return this;
+	}
+
+	@Nullable
+	private static IoSupplier<InputStream> supply(@Nullable byte[] data) {
+		return data == null ? null : () -> new ByteArrayInputStream(data);
+	}
+
+	@Override
+	@Nullable
+	public IoSupplier<InputStream> getRootResource(String... elements) {
+		return supply(rootFiles.get(String.join("/", elements)));
+	}
+
+	@Override
+	@Nullable
+	public IoSupplier<InputStream> getResource(PackType type, ResourceLocation location) {
+		final Map<ResourceLocation, byte[]> files = this.files.get(type);
+		return files == null ? null : supply(files.get(location));
+	}
+
+	@Override
+	public void listResources(PackType type, String namespace, String path, ResourceOutput output) {
+		final Map<ResourceLocation, byte[]> files = this.files.get(type);
+		if (files == null) return;
+
+		// An empty path means the whole namespace, which is how Patched lists packs.
+		final String prefix = path.isEmpty() || path.endsWith("/") ? path : path + "/";
+
+		files.forEach((loc, data) -> {
+			if (loc.getNamespace().equals(namespace) && loc.getPath().startsWith(prefix))
+				output.accept(loc, supply(data));
+		});
+	}
+
+	@Override
+	public Set<String> getNamespaces(PackType type) {
+		final Set<String> ret = new HashSet<>();
+		final Map<ResourceLocation, byte[]> files = this.files.get(type);
+
+		if (files != null)
+			for (ResourceLocation loc : files.keySet())
+				ret.add(loc.getNamespace());
+
+		return ret;
+	}
+
+	@Override
+	@Nullable
+	public <T> T getMetadataSection(MetadataSectionSerializer<T> deserializer) {
+		return null;
+	}
+
+	@Override
+	public PackLocationInfo location() {
+		return location;
+	}
+
+	@Override
+	public void close() {}
+
+	@Override
+	public PatchedMetadata patchedMetadata() {
+		return metadata;
+	}
+
+	@Override
+	public void setPatchedMetadata(PatchedMetadata value) {
+		metadata = value;
+	}
+
+	@Override
+	public boolean initialized() {
+		return true;
+	}
+
+	@Override
+	public int patched$slot(PackType type) {
+		return slots.getOrDefault(type, -1);
+	}
+
+	@Override
+	public void patched$setSlot(PackType type, int slot) {
+		slots.put(type, slot);
+	}
+
+	@Override
+	public String toString() {
+		return "MemoryPack { id = %s }".formatted(location.id());
+	}
+}
@@ -0,0 +1,105 @@
+package net.enderturret.patchedmod.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.JsonElement;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.resources.IoSupplier;
+
+import net.enderturret.patchedmod.internal.MixinCallbacks;
+import net.enderturret.patchedmod.util.PatchingInputStream;
+
+/**
+ * <p>Benchmarks opening files through {@link MixinCallbacks#chain(IoSupplier, net.minecraft.server.packs.resources.FallbackResourceManager, net.minecraft.server.packs.PackType, ResourceLocation, PackResources) MixinCallbacks.chain()}, which is what every resource read during a reload goes through.</p>
+ * <p>
+ * Each invocation opens the next file of the base pack, so that all the files get a turn.
+ * The throughput and per-file latency are measured for each benchmark, and the allocation rate comes from the {@code gc} profiler.
+ * </p>
+ * @author EnderTurret
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PatchingBenchmark {
+
+	private static final int FILES = 1024;
+
+	@Param({ "10", "100", "1000" })
+	public int packs;
+
+	/**
+	 * The chance of each pack patching each file. {@code 0} measures the overhead on files nobody patches.
+	 */
+	@Param({ "0", "0.001", "0.01", "0.1" })
+	public double density;
+
+	private SyntheticPacks synthetic;
+	private List<ResourceLocation> files;
+	private PackResources base;
+	private int next;
+
+	/**
+	 * Builds the packs. This fails if the patches aren't all found and applied, since the results would be meaningless otherwise.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		synthetic = SyntheticPacks.create(packs, FILES, density);
+		files = synthetic.files;
+		base = synthetic.packsByPriority.get(0);
+	}
+
+	private IoSupplier<InputStream> nextFile() {
+		final ResourceLocation loc = files.get(next);
+		next = (next + 1) % files.size();
+		return MixinCallbacks.chain(base.getResource(SyntheticPacks.TYPE, loc), synthetic.manager, SyntheticPacks.TYPE, loc, base);
+	}
+
+	/**
+	 * Only wraps the file, which is all that happens to files that are listed but never opened.
+	 */
+	@Benchmark
+	public IoSupplier<InputStream> chain() {
+		return nextFile();
+	}
+
+	/**
+	 * Opens and reads the file as a stream, like most readers do.
+	 */
+	@Benchmark
+	public void read(Blackhole bh) throws IOException {
+		try (InputStream is = nextFile().get()) {
+			bh.consume(is.readAllBytes());
+		}
+	}
+
+	/**
+	 * Opens the file and grabs the patched Json directly, like the reload listeners that parse Json do.
+	 */
+	@Benchmark
+	public void readJson(Blackhole bh) throws IOException {
+		try (InputStream is = nextFile().get()) {
+			final JsonElement json = is instanceof PatchingInputStream pis ? pis.getPatchedJson() : null;
+
+			if (json != null)
+				bh.consume(json);
+			else
+				bh.consume(is.readAllBytes());
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package net.enderturret.patchedmod.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.resources.FallbackResourceManager;
+import net.minecraft.server.packs.resources.IoSupplier;
+
+import net.enderturret.patchedmod.Patched;
+import net.enderturret.patchedmod.internal.MixinCallbacks;
+import net.enderturret.patchedmod.internal.PatchIndex;
+import net.enderturret.patchedmod.internal.env.DummyPlatform;
+import net.enderturret.patchedmod.util.meta.PatchedMetadata;
+
+/**
+ * <p>Builds a reproducible set of in-memory packs for the benchmarks.</p>
+ * <p>
+ * There's always one "base" pack at the bottom with all the files, and {@code packs - 1} packs above it.
+ * Each of those has a patch for any given file with a probability of {@code density}.
+ * </p>
+ * @author EnderTurret
+ */
+final class SyntheticPacks {
+
+	static final PackType TYPE = PackType.SERVER_DATA;
+	static final String NAMESPACE = "minecraft";
+
+	private static final long SEED = 0x9A7C4EDL;
+
+	final List<PackResources> packsByPriority;
+	final List<ResourceLocation> files;
+	final FallbackResourceManager manager;
+	final int patchCount;
+	final int patchedFileCount;
+
+	private SyntheticPacks(List<PackResources> packsByPriority, List<ResourceLocation> files, FallbackResourceManager manager, int patchCount, int patchedFileCount) {
+		this.packsByPriority = packsByPriority;
+		this.files = files;
+		this.manager = manager;
+		this.patchCount = patchCount;
+		this.patchedFileCount = patchedFileCount;
+	}
+
+	/**
+	 * Builds the packs and sets them up the same way a reload would.
+	 * @param packs The total number of packs, including the base pack.
+	 * @param fileCount The number of files in the base pack.
+	 * @param density The chance of each non-base pack having a patch for each file.
+	 * @return The packs.
+	 */
+	static SyntheticPacks create(int packs, int fileCount, double density) {
+		Patched.setPlatform(new DummyPlatform());
+
+		final Random random = new Random(SEED);
+		final List<ResourceLocation> files = new ArrayList<>(fileCount);
+		final MemoryPack base = new MemoryPack("base", PatchedMetadata.DISABLED_METADATA);
+
+		for (int i = 0; i < fileCount; i++) {
+			final ResourceLocation loc = ResourceLocation.fromNamespaceAndPath(NAMESPACE, "recipe/item_" + i + ".json");
+			files.add(loc);
+			base.add(TYPE, loc, recipe(i));
+		}
+
+		final List<PackResources> packsByPriority = new ArrayList<>(packs);
+		final FallbackResourceManager manager = new FallbackResourceManager(TYPE, NAMESPACE);
+		packsByPriority.add(base);
+		manager.push(base);
+
+		int patchCount = 0;
+		final boolean[] patched = new boolean[fileCount];
+
+		for (int i = 1; i < packs; i++) {
+			final MemoryPack pack = new MemoryPack("pack_" + i, PatchedMetadata.CURRENT_VERSION);
+
+			for (int j = 0; j < fileCount; j++)
+				if (random.nextDouble() < density) {
+					final ResourceLocation loc = files.get(j);
+					pack.add(TYPE, loc.withPath(loc.getPath() + ".patch"), patch(i));
+					patchCount++;
+					patched[j] = true;
+				}
+
+			packsByPriority.add(pack);
+			manager.push(pack);
+		}
+
+		MixinCallbacks.setupTargetManager(TYPE, packsByPriority);
+
+		int patchedFileCount = 0;
+		for (boolean b : patched)
+			if (b) patchedFileCount++;
+
+		final SyntheticPacks ret = new SyntheticPacks(List.copyOf(packsByPriority), List.copyOf(files), manager, patchCount, patchedFileCount);
+		ret.verify();
+		return ret;
+	}
+
+	/**
+	 * Makes sure the patches are actually found and applied, so that the benchmarks don't quietly end up measuring only the path for files nobody patches.
+	 * @throws IllegalStateException If the wrong number of patches were indexed, or the wrong number of files changed.
+	 */
+	private void verify() {
+		final PatchIndex index = MixinCallbacks.getPatchIndices().get(TYPE);
+		final PackResources base = packsByPriority.get(0);
+
+		int indexed = 0;
+		for (ResourceLocation file : files)
+			indexed += index.getPacks(file).size();
+
+		if (indexed != patchCount)
+			throw new IllegalStateException("Expected " + patchCount + " patches to be indexed, but found " + indexed);
+
+		int changed = 0;
+
+		for (ResourceLocation file : files) {
+			final IoSupplier<InputStream> original = base.getResource(TYPE, file);
+
+			try (InputStream unpatched = original.get(); InputStream is = MixinCallbacks.chain(original, manager, TYPE, file, base).get()) {
+				if (!Arrays.equals(unpatched.readAllBytes(), is.readAllBytes()))
+					changed++;
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to read " + file, e);
+			}
+		}
+
+		if (changed != patchedFileCount)
+			throw new IllegalStateException("Expected " + patchedFileCount + " files to be patched, but " + changed + " were");
+	}
+
+	static String recipe(int i) {
+		return """
+				{
+				  "type": "minecraft:crafting_shaped",
+				  "category": "building",
+				  "key": {
+				    "#": { "item": "minecraft:stone" },
+				    "X": { "item": "minecraft:stick" }
+				  },
+				  "pattern": [ "###", " X ", " X " ],
+				  "result": { "count": %s, "id": "minecraft:item_%s" }
+				}
+				""".formatted(1 + i % 4, i);
+	}
+
+	static String patch(int pack) {
+		return """
+				[
+				  { "op": "replace", "path": "/result/count", "value": %s },
+				  { "op": "add", "path": "/key/P%s", "value": { "item": "minecraft:pack_%s" } }
+				]
+				""".formatted(pack % 64 + 1, pack, pack);
+	}
+}
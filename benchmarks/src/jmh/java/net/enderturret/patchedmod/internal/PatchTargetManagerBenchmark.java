@@ -0,0 +1,188 @@
+package net.enderturret.patchedmod.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+
+import net.enderturret.patchedmod.Patched;
+import net.enderturret.patchedmod.benchmark.MemoryPack;
+import net.enderturret.patchedmod.internal.env.DummyPlatform;
+import net.enderturret.patchedmod.util.meta.IPattern;
+import net.enderturret.patchedmod.util.meta.PatchTarget;
+import net.enderturret.patchedmod.util.meta.PatchTarget.Target;
+import net.enderturret.patchedmod.util.meta.PatchedMetadata;
+
+/**
+ * <p>Benchmarks building a {@link PatchTargetManager} and looking up the targets of files in it, at modpack scale.</p>
+ * <p>
+ * The targets are spread over 100 packs and a handful of namespaces,
+ * and each target's path is either a plain file name ({@link IPattern.Simple}) or, with a probability of {@code regexRatio}, a regular expression ({@link IPattern.Regex}).
+ * The files looked up are a mix of ones that are targeted and ones that aren't, since most files in a real pack aren't targeted by anything.
+ * </p>
+ * <p>
+ * This lives in the same package as the manager so it can get at its package-private methods.
+ * The allocations per call are the {@code gc.alloc.rate.norm} figures from the {@code gc} profiler.
+ * </p>
+ * @author EnderTurret
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PatchTargetManagerBenchmark {
+
+	private static final PackType TYPE = PackType.SERVER_DATA;
+	private static final int PACKS = 100;
+	private static final int FILES = 4096;
+	private static final long SEED = 0x7A46E75L;
+
+	private static final String[] NAMESPACES = { "minecraft", "create", "farmersdelight", "mekanism", "botania", "ae2", "thermal", "tconstruct" };
+	private static final String[] DIRECTORIES = { "recipe", "loot_table/blocks", "loot_table/chests", "advancement/recipes", "tags/item", "worldgen/placed_feature" };
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int targets;
+
+	@Param({ "0", "0.1", "0.5" })
+	public double regexRatio;
+
+	private List<PackResources> packsByPriority;
+	private PatchTargetManager manager;
+	private List<ResourceLocation> files;
+	private List<PackResources> froms;
+	private PackResources base;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Patched.setPlatform(new DummyPlatform());
+
+		final Random random = new Random(SEED);
+		final List<List<PatchTarget>> targetsByPack = new ArrayList<>(PACKS);
+		for (int i = 0; i < PACKS; i++)
+			targetsByPack.add(new ArrayList<>());
+
+		for (int i = 0; i < targets; i++) {
+			final String namespace = NAMESPACES[random.nextInt(NAMESPACES.length)];
+			final String directory = DIRECTORIES[random.nextInt(DIRECTORIES.length)];
+
+			final IPattern path = random.nextDouble() < regexRatio
+					// Something along the lines of what people actually write: a directory and a family of names.
+					? new IPattern.Regex(Pattern.compile(Pattern.quote(directory + "/") + "[a-z_]*" + (char) ('a' + random.nextInt(26)) + "[a-z_]*_" + random.nextInt(10) + "\\d*\\.json"))
+					: new IPattern.Simple(file(directory, random.nextInt(FILES)));
+
+			final Target target = new Target(List.of(new IPattern.Simple(namespace)), List.of(path));
+			targetsByPack.get(random.nextInt(PACKS)).add(new PatchTarget(Optional.empty(), "target_" + i, List.of(target)));
+		}
+
+		final List<PackResources> packsByPriority = new ArrayList<>(PACKS + 1);
+		base = new MemoryPack("base", PatchedMetadata.DISABLED_METADATA);
+		packsByPriority.add(base);
+
+		for (int i = 0; i < PACKS; i++)
+			packsByPriority.add(new MemoryPack("pack_" + i, new PatchedMetadata(PatchedMetadata.CURRENT_VERSION.formatVersion(), List.copyOf(targetsByPack.get(i)))));
+
+		this.packsByPriority = List.copyOf(packsByPriority);
+
+		final List<ResourceLocation> files = new ArrayList<>(FILES);
+		for (int i = 0; i < FILES; i++)
+			files.add(ResourceLocation.fromNamespaceAndPath(NAMESPACES[random.nextInt(NAMESPACES.length)], file(DIRECTORIES[random.nextInt(DIRECTORIES.length)], i)));
+
+		// Listings are grouped by namespace, like they are in-game.
+		files.sort(null);
+		this.files = List.copyOf(files);
+		froms = Collections.nCopies(FILES, base);
+
+		manager = new PatchTargetManager(TYPE, this.packsByPriority);
+		// Bake everything up front, so that the lookups don't measure that.
+		manager.getTargets(this.files, froms);
+	}
+
+	private static String file(String directory, int i) {
+		return directory + "/" + (char) ('a' + i % 26) + "_item_" + i + ".json";
+	}
+
+	/**
+	 * Builds a manager, which happens once per pack type on every reload.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public PatchTargetManager construct() {
+		return new PatchTargetManager(TYPE, packsByPriority);
+	}
+
+	/**
+	 * Builds a manager and bakes every namespace, which is what a reload ends up paying for in total.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public PatchTargetManager constructAndBake() {
+		final PatchTargetManager ret = new PatchTargetManager(TYPE, packsByPriority);
+		for (String namespace : NAMESPACES)
+			ret.hasTargets(namespace);
+		return ret;
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+	public FileTargets getTargets(Cursor cursor) {
+		return manager.getTargets(files.get(cursor.next()), base);
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+	@Threads(8)
+	public FileTargets getTargetsContended(Cursor cursor) {
+		return manager.getTargets(files.get(cursor.next()), base);
+	}
+
+	/**
+	 * Looks up a whole listing at once, like {@code listResources()} does.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public TargetBatch getTargetsBatch() {
+		return manager.getTargets(files, froms);
+	}
+
+	/**
+	 * Each thread walks through the files on its own, starting at a different place so that contended threads aren't in lockstep.
+	 * @author EnderTurret
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private static int nextStart;
+
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			synchronized (Cursor.class) {
+				next = nextStart;
+				nextStart = (nextStart + 997) % FILES;
+			}
+		}
+
+		int next() {
+			final int ret = next;
+			next = (next + 1) % FILES;
+			return ret;
+		}
+	}
+}
@@ -2,6 +2,7 @@ package net.enderturret.patchedmod;
 
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.jetbrains.annotations.ApiStatus.Internal;
@@ -38,6 +39,17 @@ public final class PatchedTestConditions implements RootEvaluator {
 
 	private static Map<String, ITestEvaluator> conditions = new ConcurrentHashMap<>();
 
+	/**
+	 * The conditions {@linkplain #isReloadConstant(String) known to give the same result for the whole reload}.
+	 */
+	private static final Set<String> RELOAD_CONSTANT = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The results of {@linkplain #isReloadConstant(String) reload-constant} conditions.
+	 * Cleared at the start of every reload.
+	 */
+	private static final Map<CachedResultKey, Boolean> RESULTS = new ConcurrentHashMap<>();
+
 	private final PackType type;
 
 	private PatchedTestConditions(@Nullable PackType type) {
@@ -62,7 +74,7 @@ public final class PatchedTestConditions implements RootEvaluator {
 
 	@Internal
 	public static void registerDefaults() {
-		registerSimple(id("mod_loaded"),
+		registerSimple(id("mod_loaded"), true,
 				value -> {
 					if (value instanceof JsonObject obj) {
 						final String modId = PatchUtil.assertIsString("patched:mod_loaded", "mod", obj.get("mod"));
@@ -73,7 +85,7 @@ public final class PatchedTestConditions implements RootEvaluator {
 					return Patched.platform().isModLoaded(PatchUtil.assertIsString("patched:mod_loaded", "value", value));
 				});
 
-		registerSimple(id("registered"),
+		registerSimple(id("registered"), true,
 				value -> {
 					if (value instanceof JsonObject obj) {
 						final ResourceLocation registry = PatchUtil.assertIsResourceLocation("patched:registered", "registry", obj.get("registry"));
@@ -87,28 +99,31 @@ public final class PatchedTestConditions implements RootEvaluator {
 				});
 
 		// Simpler version of "registered" specifically for items.
-		registerSimple(id("item_registered"),
+		registerSimple(id("item_registered"), true,
 				value -> BuiltInRegistries.ITEM.containsKey(PatchUtil.assertIsResourceLocation("patched:item_registered", "value", value)));
 
-		register(id("pack_enabled"), (root, _type, target, value, context) -> {
-			final PackType type = ((RootEvaluator) context.testEvaluator()).packType();
-			// Happens if someone uses PatchUtil.CONTEXT or INSTANCE directly (or otherwise constructs a type-agnostic evaluator).
-			if (type == null) throw new PatchingException("Cannot use patched:pack_enabled in type-agnostic context");
-			final PatchTargetManager manager = MixinCallbacks.getTargetManagers().get(type);
+		register(id("pack_enabled"), PACK_ENABLED);
+		RELOAD_CONSTANT.add(id("pack_enabled").toString());
+	}
 
-			if (value instanceof JsonArray array) {
-				if (array.isEmpty()) throw new PatchingException("patched:pack_enabled: value array must not be empty");
+	private static final ITestEvaluator PACK_ENABLED = (root, _type, target, value, context) -> {
+		final PackType type = ((RootEvaluator) context.testEvaluator()).packType();
+		// Happens if someone uses PatchUtil.CONTEXT or INSTANCE directly (or otherwise constructs a type-agnostic evaluator).
+		if (type == null) throw new PatchingException("Cannot use patched:pack_enabled in type-agnostic context");
+		final PatchTargetManager manager = MixinCallbacks.getTargetManagers().get(type);
 
-				for (int i = 0; i < array.size(); i++)
-					if (manager.containsPack(PatchUtil.assertIsString("patched:pack_enabled", "value$" + (i + 1), array.get(i))))
-						return true;
+		if (value instanceof JsonArray array) {
+			if (array.isEmpty()) throw new PatchingException("patched:pack_enabled: value array must not be empty");
 
-				return false;
-			}
+			for (int i = 0; i < array.size(); i++)
+				if (manager.containsPack(PatchUtil.assertIsString("patched:pack_enabled", "value$" + (i + 1), array.get(i))))
+					return true;
 
-			return manager.containsPack(PatchUtil.assertIsString("patched:pack_enabled", "value", value));
-		});
-	}
+			return false;
+		}
+
+		return manager.containsPack(PatchUtil.assertIsString("patched:pack_enabled", "value", value));
+	};
 
 	/**
 	 * Registers the given condition under the given name.
@@ -117,6 +132,8 @@ public final class PatchedTestConditions implements RootEvaluator {
 	 */
 	public static void register(ResourceLocation name, ITestEvaluator condition) {
 		conditions.put(name.toString(), Objects.requireNonNull(condition));
+		RELOAD_CONSTANT.remove(name.toString());
+		RESULTS.clear();
 	}
 
 	/**
@@ -129,6 +146,63 @@ public final class PatchedTestConditions implements RootEvaluator {
 		register(name, condition);
 	}
 
+	/**
+	 * <p>Registers the given condition under the given name, like {@link #registerSimple(ResourceLocation, ISimpleTestEvaluator)}.</p>
+	 * <p>
+	 * If {@code reloadConstant} is {@code true}, the condition promises to give the same result for the same value for the whole reload
+	 * (such as when it only checks which mods are loaded, or what is registered).
+	 * Its results are then only evaluated once per value each reload,
+	 * and patches that start with a test using it may be dropped as soon as they're read if the test fails.
+	 * Conditions that read configs, the time, or anything else that can change in the middle of a reload must not set this.
+	 * </p>
+	 * @param name The name of the condition. This will be the {@code type} value that the condition is invoked for.
+	 * @param reloadConstant Whether the condition gives the same result for the same value for the whole reload.
+	 * @param condition The condition itself.
+	 */
+	public static void registerSimple(ResourceLocation name, boolean reloadConstant, ISimpleTestEvaluator condition) {
+		register(name, condition);
+		if (reloadConstant)
+			RELOAD_CONSTANT.add(name.toString());
+	}
+
+	/**
+	 * Determines whether the specified condition only depends on its value, and not on the document being patched.
+	 * The results of such conditions can be checked again later without patching anything, which the {@link net.enderturret.patchedmod.internal.OutputCache OutputCache} relies on.
+	 * @param type The type of the condition.
+	 * @return {@code true} if the condition only depends on its value.
+	 */
+	@Internal
+	public static boolean isContextFree(String type) {
+		return isContextFree(conditions.get(type));
+	}
+
+	private static boolean isContextFree(@Nullable ITestEvaluator condition) {
+		return condition instanceof ISimpleTestEvaluator || condition == PACK_ENABLED;
+	}
+
+	/**
+	 * <p>Determines whether the specified condition gives the same result for the same value for the whole reload.</p>
+	 * <p>
+	 * This is only the case for the builtin conditions that are known to be like that,
+	 * and for conditions {@linkplain #registerSimple(ResourceLocation, boolean, ISimpleTestEvaluator) registered as such}.
+	 * </p>
+	 * @param type The type of the condition.
+	 * @return {@code true} if the condition's results can be reused for the rest of the reload.
+	 */
+	@Internal
+	public static boolean isReloadConstant(String type) {
+		return RELOAD_CONSTANT.contains(type);
+	}
+
+	/**
+	 * Forgets the results of all conditions evaluated so far.
+	 * Called at the start of every reload, since things like the enabled packs may have changed.
+	 */
+	@Internal
+	public static void clearCachedResults() {
+		RESULTS.clear();
+	}
+
 	private static ResourceLocation id(String path) {
 		return ResourceLocation.fromNamespaceAndPath(Patched.MOD_ID, path);
 	}
@@ -136,9 +210,31 @@ public final class PatchedTestConditions implements RootEvaluator {
 	@Override
 	public boolean test(JsonElement root, String type, JsonElement target, JsonElement value, PatchContext context) {
 		final ITestEvaluator con = conditions.get(type);
-		return con != null && con.test(root, type, target, value, context);
+		if (con == null) return false;
+
+		// Conditions that give the same result for the whole reload don't need to be evaluated more than once.
+		if (value == null || !isReloadConstant(type))
+			return con.test(root, type, target, value, context);
+
+		final PackType packType = con == PACK_ENABLED && context.testEvaluator() instanceof RootEvaluator re ? re.packType() : null;
+		final Boolean cached = RESULTS.get(new CachedResultKey(type, packType, value));
+		if (cached != null) return cached;
+
+		final boolean ret = con.test(root, type, target, value, context);
+		RESULTS.put(new CachedResultKey(type, packType, value.deepCopy()), ret);
+
+		return ret;
 	}
 
+	/**
+	 * The key of a cached condition result.
+	 * Json objects compare equal regardless of the order of their members, so differently-formatted but equivalent values share the same result.
+	 * @param type The type of the condition.
+	 * @param packType The pack type, for conditions that depend on it.
+	 * @param value The value given to the condition.
+	 */
+	private static record CachedResultKey(String type, @Nullable PackType packType, JsonElement value) {}
+
 	/**
 	 * Represents a "simple" condition.
 	 * See {@link PatchedTestConditions#registerSimple(ResourceLocation, ISimpleTestEvaluator)} for more information.
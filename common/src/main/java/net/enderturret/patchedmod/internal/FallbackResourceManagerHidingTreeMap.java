@@ -1,15 +1,21 @@
 package net.enderturret.patchedmod.internal;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 
 import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
 
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.packs.PackType;
 import net.minecraft.server.packs.resources.FallbackResourceManager;
 
 /**
  * {@code FallbackResourceManagerHidingTreeMap} is, as the name suggests, a {@link TreeMap} that also tracks a {@link FallbackResourceManager}.
  * The purpose of this class is to allow passing a {@code FallbackResourceManager} into a static lambda by hiding it in one of the captured locals.
+ * Since it's also the map {@code listResources()} returns, it doubles as a place to keep the patch targets of the listed files, which are all resolved at once.
  *
  * @author EnderTurret
  *
@@ -22,8 +28,47 @@ public final class FallbackResourceManagerHidingTreeMap<K, V> extends TreeMap<K,
 	public final FallbackResourceManager manager;
 	public final PackType type;
 
+	// The patch targets of every listed file, resolved once the listing is complete.
+	@Nullable
+	private volatile Map<ResourceLocation, FileTargets> targets;
+
+	// The listed files waiting to be prefetched until their targets are resolved. Only touched while listing.
+	@Nullable
+	private List<Prefetcher.Prefetched> prefetches;
+
 	public FallbackResourceManagerHidingTreeMap(FallbackResourceManager manager, PackType type) {
 		this.manager = manager;
 		this.type = type;
 	}
+
+	/**
+	 * Returns the patch targets of the specified listed file, if they've been resolved.
+	 * @param location The file.
+	 * @return The patch targets, or {@code null} if they haven't been resolved.
+	 */
+	@Nullable
+	FileTargets getTargets(ResourceLocation location) {
+		final Map<ResourceLocation, FileTargets> targets = this.targets;
+		return targets != null ? targets.get(location) : null;
+	}
+
+	void setTargets(Map<ResourceLocation, FileTargets> targets) {
+		this.targets = targets;
+	}
+
+	void addPrefetch(Prefetcher.Prefetched prefetched) {
+		if (prefetches == null)
+			prefetches = new ArrayList<>();
+
+		prefetches.add(prefetched);
+	}
+
+	/**
+	 * @return The listed files waiting to be prefetched, which are then no longer tracked here.
+	 */
+	List<Prefetcher.Prefetched> takePrefetches() {
+		final List<Prefetcher.Prefetched> ret = prefetches;
+		prefetches = null;
+		return ret != null ? ret : List.of();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package net.enderturret.patchedmod.internal;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.minecraft.server.packs.PackResources;
+
+import net.enderturret.patchedmod.internal.PatchTargetManager.BakedTarget;
+
+/**
+ * <p>The patches that target a single file, as found by {@link PatchTargetManager}.</p>
+ * <p>
+ * This is a view over the matched indices in a compiled target set, rather than a map of lists,
+ * so that finding the targets of a file doesn't need to allocate a bunch of collections that are usually thrown away right after.
+ * </p>
+ * @author EnderTurret
+ */
+final class FileTargets {
+
+	static final FileTargets EMPTY = new FileTargets(List.of(), new int[0], 0, 0);
+
+	private final List<BakedTarget> targets;
+	private final int[] indices;
+	private final int start;
+	private final int end;
+
+	FileTargets(List<BakedTarget> targets, int[] indices, int start, int end) {
+		this.targets = targets;
+		this.indices = indices;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @return {@code true} if no patches target the file.
+	 */
+	boolean isEmpty() {
+		return start == end;
+	}
+
+	/**
+	 * Returns the patches from the specified pack that target the file.
+	 * @param pack The pack.
+	 * @return The patches, in the order they're listed in the pack's metadata.
+	 */
+	List<String> get(PackResources pack) {
+		List<String> ret = null;
+
+		for (int i = start; i < end; i++) {
+			final BakedTarget target = targets.get(indices[i]);
+			if (target.from() != pack) continue;
+
+			if (ret == null) ret = new ArrayList<>(2);
+			ret.add(target.patch());
+		}
+
+		return ret != null ? ret : List.of();
+	}
+
+	/**
+	 * @return The packs with patches that target the file.
+	 */
+	List<PackResources> packs() {
+		final List<PackResources> ret = new ArrayList<>(2);
+
+		for (int i = start; i < end; i++) {
+			final PackResources pack = targets.get(indices[i]).from();
+			if (!ret.contains(pack))
+				ret.add(pack);
+		}
+
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		final Map<PackResources, List<String>> ret = new IdentityHashMap<>();
+
+		for (int i = start; i < end; i++) {
+			final BakedTarget target = targets.get(indices[i]);
+			ret.computeIfAbsent(target.from(), k -> new ArrayList<>()).add(target.patch());
+		}
+
+		return ret.toString();
+	}
+}
@@ -0,0 +1,131 @@
+package net.enderturret.patchedmod.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+
+import net.enderturret.patchedmod.Patched;
+import net.enderturret.patchedmod.util.PatchUtil;
+
+/**
+ * <p>An index of the children of {@linkplain net.enderturret.patchedmod.util.env.IPlatform#isGroup(PackResources) group packs}, built once per reload.</p>
+ * <p>
+ * Group packs can contain hundreds of children, and without this every file would require asking each of them whether it has the file (to find out where it really came from),
+ * and going through all of them again to find the ones with patches.
+ * Instead, the contents of each child are listed the first time a namespace of the group is looked at, and every lookup after that is a single hash table lookup.
+ * </p>
+ * @author EnderTurret
+ */
+@Internal
+public final class GroupIndex {
+
+	private final PackType type;
+
+	private final LoadingCache<PackResources, Map<String, Namespace>> groups = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(new CacheLoader<PackResources, Map<String, Namespace>>() {
+				@Override
+				public Map<String, Namespace> load(PackResources key) throws Exception {
+					return new ConcurrentHashMap<>();
+				}
+			});
+
+	GroupIndex(PackType type) {
+		this.type = type;
+	}
+
+	private Namespace get(PackResources group, ResourceLocation file) {
+		final Map<String, Namespace> namespaces = groups.getUnchecked(group);
+		Namespace ret = namespaces.get(file.getNamespace());
+
+		if (ret == null)
+			ret = namespaces.computeIfAbsent(file.getNamespace(), k -> index(group, file));
+
+		return ret;
+	}
+
+	private Namespace index(PackResources group, ResourceLocation file) {
+		final Collection<PackResources> children = Patched.platform().getFilteredChildren(group, type, file);
+		final List<PackResources> patching = new ArrayList<>();
+		Map<ResourceLocation, PackResources> owners = new HashMap<>();
+
+		for (PackResources child : children) {
+			if (Patched.platform().hasPatches(child))
+				patching.add(child);
+
+			if (owners != null) {
+				final List<ResourceLocation> files = PatchUtil.tryGetResources(child, type, file.getNamespace(), loc -> true);
+
+				if (files == null) {
+					Patched.platform().logger().warn("Failed to list the contents of {}; files in {} will be looked up individually instead.", Patched.platform().getName(child), file.getNamespace());
+					owners = null;
+				} else
+					for (ResourceLocation loc : files)
+						// The first child with the file is the one it comes from.
+						owners.putIfAbsent(loc, child);
+			}
+		}
+
+		Patched.platform().logger().debug("Indexed namespace {} of group {}: {} children, {} with patches, {} files.",
+				file.getNamespace(), Patched.platform().getName(group), children.size(), patching.size(), owners != null ? owners.size() : "(unknown)");
+
+		return new Namespace(List.copyOf(children), List.copyOf(patching), owners);
+	}
+
+	/**
+	 * Finds the child of the specified group that the specified file comes from.
+	 * @param group The group pack.
+	 * @param file The file.
+	 * @return The child containing the file, or {@code null} if none of them do.
+	 */
+	@Nullable
+	public PackResources findOwner(PackResources group, ResourceLocation file) {
+		final Namespace namespace = get(group, file);
+
+		if (namespace.owners() != null)
+			return namespace.owners().get(file);
+
+		for (PackResources pack : namespace.children())
+			if (pack.getResource(type, file) != null)
+				return pack;
+
+		return null;
+	}
+
+	/**
+	 * Returns the children of the specified group with patching enabled that contain the namespace of the specified file.
+	 * @param group The group pack.
+	 * @param file The file.
+	 * @return The children, in the same order as {@link net.enderturret.patchedmod.util.env.IPlatform#getFilteredChildren(PackResources, PackType, ResourceLocation) getFilteredChildren()}.
+	 */
+	public List<PackResources> getPatchingChildren(PackResources group, ResourceLocation file) {
+		return get(group, file).patching();
+	}
+
+	@Override
+	public String toString() {
+		return "GroupIndex { type = %s, groups = %s }".formatted(type, groups.size());
+	}
+
+	/**
+	 * The index of one namespace of a group.
+	 * @param children The children containing the namespace.
+	 * @param patching The children containing the namespace that have patching enabled.
+	 * @param owners Maps each file in the namespace to the child it comes from, or {@code null} if a child couldn't be listed.
+	 */
+	private static record Namespace(List<PackResources> children, List<PackResources> patching, @Nullable Map<ResourceLocation, PackResources> owners) {}
+}
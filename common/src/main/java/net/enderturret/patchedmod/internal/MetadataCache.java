@@ -0,0 +1,279 @@
+package net.enderturret.patchedmod.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.server.packs.PackResources;
+
+import net.enderturret.patchedmod.Patched;
+import net.enderturret.patchedmod.util.meta.IPattern;
+import net.enderturret.patchedmod.util.meta.PatchTarget;
+import net.enderturret.patchedmod.util.meta.PatchedMetadata;
+import net.enderturret.patchedmod.util.meta.PatchedPackType;
+
+/**
+ * <p>A persistent cache of decoded {@link PatchedMetadata}, so that unchanged packs don't need their metadata read and decoded again every launch.</p>
+ * <p>
+ * Entries are keyed by pack id and the {@linkplain net.enderturret.patchedmod.util.env.IPlatform#getPackSource(PackResources) file the pack comes from},
+ * and are only used if that file's size and modification time haven't changed.
+ * Packs that don't come from a plain file or directory are never cached.
+ * </p>
+ * <p>The cache can be turned off with {@code -Dpatched.disableMetadataCache=true}.</p>
+ * @author EnderTurret
+ */
+@Internal
+public final class MetadataCache {
+
+	private static final boolean ENABLED = !Boolean.getBoolean("patched.disableMetadataCache");
+
+	private static final int MAGIC = 0x50544D43; // PTMC
+	private static final int VERSION = 1;
+
+	private static final Object LOCK = new Object();
+
+	@Nullable
+	private static volatile Map<String, Entry> entries;
+	private static volatile boolean dirty;
+
+	private MetadataCache() {}
+
+	private static Path getFile() {
+		return Patched.platform().getGameDirectory().resolve(".patched_cache").resolve("metadata.bin");
+	}
+
+	/**
+	 * Computes the fingerprint of the specified pack, which is used to look it up in the cache.
+	 * @param pack The pack.
+	 * @return The fingerprint, or {@code null} if the pack can't be cached.
+	 */
+	@Nullable
+	static Fingerprint fingerprint(PackResources pack) {
+		if (!ENABLED) return null;
+
+		final Path source = Patched.platform().getPackSource(pack);
+		// Paths inside jars and the like don't exist as far as the cache is concerned, and can't be checked for later anyway.
+		if (source == null || source.getFileSystem() != FileSystems.getDefault()) return null;
+
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+
+			// A directory's modification time doesn't change when the files in it do, so use the pack.mcmeta instead.
+			if (attrs.isDirectory())
+				attrs = Files.readAttributes(source.resolve("pack.mcmeta"), BasicFileAttributes.class);
+
+			final String path = source.toAbsolutePath().toString();
+			return new Fingerprint(pack.packId() + "\0" + path, path, attrs.size(), attrs.lastModifiedTime().toMillis());
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			Patched.platform().logger().debug("Failed to fingerprint {}:", pack.packId(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Looks up the cached metadata for the pack with the specified fingerprint.
+	 * @param fingerprint The fingerprint of the pack.
+	 * @return The cached metadata, or {@code null} if it isn't cached or the pack changed.
+	 */
+	@Nullable
+	static PatchedMetadata get(@Nullable Fingerprint fingerprint) {
+		if (fingerprint == null) return null;
+
+		final Entry entry = entries().get(fingerprint.key());
+		if (entry == null || entry.size() != fingerprint.size() || entry.modified() != fingerprint.modified())
+			return null;
+
+		return entry.metadata();
+	}
+
+	/**
+	 * Caches the metadata for the pack with the specified fingerprint.
+	 * @param fingerprint The fingerprint of the pack.
+	 * @param metadata The pack's metadata.
+	 */
+	static void put(@Nullable Fingerprint fingerprint, PatchedMetadata metadata) {
+		if (fingerprint == null) return;
+
+		entries().put(fingerprint.key(), new Entry(fingerprint.source(), fingerprint.size(), fingerprint.modified(), metadata));
+		dirty = true;
+	}
+
+	private static Map<String, Entry> entries() {
+		Map<String, Entry> ret = entries;
+
+		if (ret == null)
+			synchronized (LOCK) {
+				ret = entries;
+				if (ret == null)
+					entries = ret = load();
+			}
+
+		return ret;
+	}
+
+	private static Map<String, Entry> load() {
+		final Map<String, Entry> ret = new ConcurrentHashMap<>();
+		final Path file = getFile();
+
+		if (!Files.exists(file)) return ret;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				Patched.platform().logger().debug("Ignoring metadata cache with unknown format.");
+				return ret;
+			}
+
+			final int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				final String key = in.readUTF();
+				ret.put(key, new Entry(in.readUTF(), in.readLong(), in.readLong(), readMetadata(in)));
+			}
+		} catch (Exception e) {
+			Patched.platform().logger().warn("Failed to read metadata cache; it will be rebuilt.", e);
+			ret.clear();
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Writes the cache to disk if anything changed.
+	 * Entries for packs whose files no longer exist are dropped.
+	 */
+	static void save() {
+		if (!ENABLED || !dirty) return;
+
+		synchronized (LOCK) {
+			final Map<String, Entry> entries = entries();
+			entries.values().removeIf(entry -> !Files.exists(Path.of(entry.source())));
+			dirty = false;
+
+			final Path file = getFile();
+			final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+			try {
+				Files.createDirectories(file.getParent());
+
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+
+					final List<Map.Entry<String, Entry>> list = new ArrayList<>(entries.entrySet());
+					out.writeInt(list.size());
+
+					for (Map.Entry<String, Entry> e : list) {
+						out.writeUTF(e.getKey());
+						out.writeUTF(e.getValue().source());
+						out.writeLong(e.getValue().size());
+						out.writeLong(e.getValue().modified());
+						writeMetadata(out, e.getValue().metadata());
+					}
+				}
+
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (Exception e) {
+				Patched.platform().logger().warn("Failed to write metadata cache:", e);
+			}
+		}
+	}
+
+	private static void writeMetadata(DataOutputStream out, PatchedMetadata metadata) throws IOException {
+		out.writeByte(metadata.formatVersion());
+		out.writeInt(metadata.patchTargets().size());
+
+		for (PatchTarget target : metadata.patchTargets()) {
+			out.writeByte(target.packType().map(Enum::ordinal).orElse(-1));
+			out.writeUTF(target.patch());
+			out.writeInt(target.targets().size());
+
+			for (PatchTarget.Target subTarget : target.targets()) {
+				writePatterns(out, subTarget.namespace());
+				writePatterns(out, subTarget.path());
+			}
+		}
+	}
+
+	private static void writePatterns(DataOutputStream out, List<IPattern> patterns) throws IOException {
+		out.writeInt(patterns.size());
+
+		for (IPattern pattern : patterns) {
+			out.writeBoolean(pattern instanceof IPattern.Regex);
+			out.writeUTF(pattern.toString());
+		}
+	}
+
+	private static PatchedMetadata readMetadata(DataInputStream in) throws IOException {
+		final byte formatVersion = in.readByte();
+		final int count = in.readInt();
+
+		if (count == 0)
+			return switch (formatVersion) {
+				case -1 -> PatchedMetadata.DISABLED_METADATA;
+				case 0 -> PatchedMetadata.LEGACY_METADATA;
+				case 1 -> PatchedMetadata.CURRENT_VERSION;
+				default -> new PatchedMetadata(formatVersion);
+			};
+
+		final List<PatchTarget> targets = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			final int packType = in.readByte();
+			final String patch = in.readUTF();
+			final int subCount = in.readInt();
+			final List<PatchTarget.Target> subTargets = new ArrayList<>(subCount);
+
+			for (int j = 0; j < subCount; j++)
+				subTargets.add(new PatchTarget.Target(readPatterns(in), readPatterns(in)));
+
+			targets.add(new PatchTarget(
+					packType == -1 ? Optional.empty() : Optional.of(PatchedPackType.values()[packType]),
+					patch,
+					List.copyOf(subTargets)));
+		}
+
+		return new PatchedMetadata(formatVersion, List.copyOf(targets));
+	}
+
+	private static List<IPattern> readPatterns(DataInputStream in) throws IOException {
+		final int count = in.readInt();
+		final List<IPattern> ret = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			final boolean regex = in.readBoolean();
+			final String value = in.readUTF();
+			ret.add(regex ? new IPattern.Regex(Pattern.compile(value)) : new IPattern.Simple(value));
+		}
+
+		return List.copyOf(ret);
+	}
+
+	/**
+	 * Identifies a pack and the state of the file it comes from.
+	 * @param key The key of the pack in the cache.
+	 * @param source The file or directory the pack comes from.
+	 * @param size The size of the file.
+	 * @param modified The modification time of the file.
+	 */
+	static record Fingerprint(String key, String source, long size, long modified) {}
+
+	private static record Entry(String source, long size, long modified, PatchedMetadata metadata) {}
+}
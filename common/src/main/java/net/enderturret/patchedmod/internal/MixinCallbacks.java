@@ -1,28 +1,38 @@
 package net.enderturret.patchedmod.internal;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
-import org.apache.commons.lang3.mutable.MutableObject;
 import org.jetbrains.annotations.ApiStatus.Internal;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 import org.slf4j.event.Level;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.google.common.io.CountingInputStream;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 
+import net.minecraft.Util;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.packs.PackResources;
 import net.minecraft.server.packs.PackType;
@@ -30,16 +40,18 @@ import net.minecraft.server.packs.resources.FallbackResourceManager;
 import net.minecraft.server.packs.resources.FallbackResourceManager.PackEntry;
 import net.minecraft.server.packs.resources.IoSupplier;
 import net.minecraft.server.packs.resources.MultiPackResourceManager;
+import net.minecraft.server.packs.resources.ReloadInstance;
+import net.minecraft.server.packs.resources.Resource;
 
 import net.enderturret.patched.IFileAccess;
 import net.enderturret.patched.JsonDocument;
-import net.enderturret.patched.Patches;
 import net.enderturret.patched.audit.PatchAudit;
 import net.enderturret.patched.exception.PatchingException;
 import net.enderturret.patched.patch.JsonPatch;
 import net.enderturret.patched.patch.PatchContext;
 import net.enderturret.patchedmod.Patched;
 import net.enderturret.patchedmod.PatchedTestConditions;
+import net.enderturret.patchedmod.RootEvaluator;
 import net.enderturret.patchedmod.util.IPatchingPackResources;
 import net.enderturret.patchedmod.util.PatchUtil;
 import net.enderturret.patchedmod.util.PatchedFileAccess;
@@ -64,6 +76,14 @@ public class MixinCallbacks {
 
 	private static final Map<PackType, PatchTargetManager> PATCH_TARGET_MANAGERS = new EnumMap<>(PackType.class);
 
+	private static final Map<PackType, PatchIndex> PATCH_INDICES = new EnumMap<>(PackType.class);
+
+	private static final Map<PackType, PatchCache> PATCH_CACHES = new EnumMap<>(PackType.class);
+
+	private static final Map<PackType, OutputCache> OUTPUT_CACHES = new EnumMap<>(PackType.class);
+
+	private static final Map<PackType, GroupIndex> GROUP_INDICES = new EnumMap<>(PackType.class);
+
 	private static final AtomicBoolean LOG_EXCEPTIONS = new AtomicBoolean(true);
 
 	/**
@@ -77,9 +97,107 @@ public class MixinCallbacks {
 	 */
 	@Internal
 	public static IoSupplier<InputStream> chain(IoSupplier<InputStream> delegate, FallbackResourceManager manager, PackType type, ResourceLocation name, PackResources origin) {
-		if (!PatchUtil.isPatchable(name)) return delegate;
+		return chain(delegate, manager, type, name, origin, null);
+	}
+
+	private static IoSupplier<InputStream> chain(IoSupplier<InputStream> delegate, FallbackResourceManager manager, PackType type, ResourceLocation name, PackResources origin, @Nullable FallbackResourceManagerHidingTreeMap<?, ?> listing) {
+		PatchTrace.begin("chain", name, null);
 
-		return () -> new PatchingInputStream(delegate, (stream, audit) -> patch(manager, origin, type, name, stream, audit));
+		try {
+			if (!PatchUtil.isPatchable(name)) return delegate;
+
+			final PatchIndex index = PATCH_INDICES.get(type);
+			if (index != null && index.canSkip(manager, name.getNamespace())) return delegate;
+
+			PatchMetrics.fileWrapped(name);
+
+			return () -> PatchedResourceReader.opened(new PatchingInputStream(delegate, (stream, audit) -> {
+				PatchTrace.begin("read", name, origin.packId());
+				ReloadProfiling.push("patched");
+
+				try {
+					return patch(manager, origin, type, name, listing, delegate, stream, audit);
+				} finally {
+					ReloadProfiling.pop();
+					PatchTrace.end("read");
+				}
+			}));
+		} finally {
+			PatchTrace.end("chain");
+		}
+	}
+
+	/**
+	 * Like {@link #chain(IoSupplier, FallbackResourceManager, PackType, ResourceLocation, PackResources)}, but for resources returned by {@code listResources()}.
+	 * These are likely to all be read soon, so they may be {@linkplain Prefetcher prefetched},
+	 * and their patch targets are {@linkplain #resolveListedTargets(FallbackResourceManagerHidingTreeMap) resolved all at once}.
+	 * Prefetching only starts once that's done.
+	 * @param delegate The delegate {@code IoSupplier}.
+	 * @param listing The map returned by {@code listResources()}.
+	 * @param name The location of the data.
+	 * @param origin The resource or data pack that the data originated from.
+	 * @return The new {@code IoSupplier}.
+	 */
+	@Internal
+	public static IoSupplier<InputStream> chainListed(IoSupplier<InputStream> delegate, FallbackResourceManagerHidingTreeMap<?, ?> listing, ResourceLocation name, PackResources origin) {
+		final IoSupplier<InputStream> ret = chain(delegate, listing.manager, listing.type, name, origin, listing);
+		if (!Prefetcher.ENABLED || ret == delegate) return ret;
+
+		final Prefetcher.Prefetched prefetched = Prefetcher.prefetch(ret, delegate);
+		listing.addPrefetch(prefetched);
+		return prefetched;
+	}
+
+	/**
+	 * Resolves the patch targets of every file returned by {@code listResources()} in one go,
+	 * so that they don't need to be found one file at a time when the files are opened.
+	 * Afterwards, the files are {@linkplain Prefetcher prefetched}, if that's enabled.
+	 * @param listing The map returned by {@code listResources()}.
+	 */
+	@Internal
+	public static void resolveListedTargets(FallbackResourceManagerHidingTreeMap<ResourceLocation, Resource> listing) {
+		try {
+			resolveTargets(listing);
+		} finally {
+			if (Prefetcher.ENABLED)
+				Prefetcher.start(listing.takePrefetches());
+		}
+	}
+
+	private static void resolveTargets(FallbackResourceManagerHidingTreeMap<ResourceLocation, Resource> listing) {
+		final PatchTargetManager targetManager = PATCH_TARGET_MANAGERS.get(listing.type);
+		if (targetManager == null || listing.isEmpty()) return;
+
+		final PatchIndex index = PATCH_INDICES.get(listing.type);
+		final List<ResourceLocation> locs = new ArrayList<>(listing.size());
+		final List<PackResources> froms = new ArrayList<>(listing.size());
+
+		for (Map.Entry<ResourceLocation, Resource> entry : listing.entrySet()) {
+			final ResourceLocation loc = entry.getKey();
+			if (!PatchUtil.isPatchable(loc) || (index != null && index.canSkip(listing.manager, loc.getNamespace())))
+				continue;
+
+			locs.add(loc);
+			froms.add(findTrueSource(entry.getValue().source(), listing.type, loc));
+		}
+
+		if (locs.isEmpty()) return;
+
+		final TargetBatch batch;
+
+		try {
+			batch = targetManager.getTargets(locs, froms);
+		} catch (Exception e) {
+			// Most likely a pack the target manager doesn't know about. They'll be resolved one by one instead.
+			Patched.platform().logger().debug("Failed to resolve targets for {} listed files:", locs.size(), e);
+			return;
+		}
+
+		final Map<ResourceLocation, FileTargets> targets = new HashMap<>(locs.size() * 4 / 3 + 1);
+		for (int i = 0; i < batch.size(); i++)
+			targets.put(locs.get(i), batch.get(i));
+
+		listing.setTargets(targets);
 	}
 
 	/**
@@ -88,51 +206,162 @@ public class MixinCallbacks {
 	 * @param from The resource or data pack that the data originated from.
 	 * @param type The type of pack this data is from.
 	 * @param name The location of the data.
+	 * @param listing If the data was returned by {@code listResources()}, the map it was returned in.
+	 * @param source The {@code IoSupplier} the data stream was opened from. Used to reopen the data if it turns out not to be valid Json.
 	 * @param stream The data stream.
 	 * @param audit The audit to record changes made by the patches.
 	 * @return A new stream containing the patched data.
 	 */
-	private static InputStream patch(FallbackResourceManager manager, PackResources from, PackType type, ResourceLocation name, InputStream stream, @Nullable PatchAudit audit) {
+	private static InputStream patch(FallbackResourceManager manager, PackResources from, PackType type, ResourceLocation name, @Nullable FallbackResourceManagerHidingTreeMap<?, ?> listing, IoSupplier<InputStream> source, InputStream stream, @Nullable PatchAudit audit) {
 		if (stream == null || !PatchUtil.isPatchable(name)) return stream;
 
-		final LazyPatchingWrapper wrapper = new LazyPatchingWrapper(stream);
+		final List<PatchStep> steps;
+
+		PatchTrace.begin("collect", name, null);
+		ReloadProfiling.push("collect");
+
+		try {
+			steps = collectPatches(manager, from, type, name, listing != null ? listing.getTargets(name) : null);
+		} catch (Exception e) {
+			logException(name, e);
+			return stream;
+		} finally {
+			ReloadProfiling.pop();
+			PatchTrace.end("collect");
+		}
+
+		if (steps.isEmpty()) return stream;
+
+		// Audits need to see the patches being applied, so those can't come from the cache.
+		final OutputCache outputs = audit == null ? OUTPUT_CACHES.get(type) : null;
+		if (outputs != null)
+			return patchCached(outputs, type, name, steps, stream);
+
+		final LazyPatchingWrapper wrapper = new LazyPatchingWrapper(name, source, stream);
 
 		try {
-			patch(manager, from, type, name, wrapper, audit);
+			if (applyPatches(type, name, steps, wrapper, audit, null))
+				PatchMetrics.filePatched(name);
 		} catch (BailException e) {
 			// Let the future data consumer handle these.
 		} catch (Exception e) {
-			if (LOG_EXCEPTIONS.getAndSet(false))
-				Patched.platform().logger().error("An exception occurred while attempting to patch {}. Further exceptions will not be reported.", name, e);
+			logException(name, e);
 		}
 
 		return wrapper.getOrCreateStream();
 	}
 
 	/**
-	 * Patches the given stream using patches from all of the packs with the given pack type.
-	 * @param manager The resource manager that the stream is from.
-	 * @param from The resource or data pack that the stream originated from.
-	 * @param type The type of pack this stream is from.
-	 * @param name The location of the stream.
-	 * @param wrapper The stream to patch.
-	 * @param audit The audit to record changes made by the patches.
-	 * @return Whether any patches were actually applied.
+	 * Patches the data from the given stream like {@link #patch(FallbackResourceManager, PackResources, PackType, ResourceLocation, FallbackResourceManagerHidingTreeMap, IoSupplier, InputStream, PatchAudit)},
+	 * but goes through the {@link OutputCache} first.
+	 * @param outputs The cache.
+	 * @param type The type of pack this data is from.
+	 * @param name The location of the data.
+	 * @param steps The patches to apply.
+	 * @param stream The data stream.
+	 * @return A new stream containing the patched data.
 	 */
-	@SuppressWarnings("resource")
-	private static boolean patch(FallbackResourceManager manager, PackResources from, PackType type, ResourceLocation name, LazyPatchingWrapper wrapper, @Nullable PatchAudit audit) {
+	private static InputStream patchCached(OutputCache outputs, PackType type, ResourceLocation name, List<PatchStep> steps, InputStream stream) {
+		final byte[] data;
+
+		try (stream) {
+			data = stream.readAllBytes();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read " + name, e);
+		}
+
+		final HashCode key = outputs.key(type, name, data, steps);
+
+		if (key != null) {
+			final byte[] cached = outputs.get(type, key, steps);
+			if (cached != null) {
+				PatchMetrics.filePatched(name);
+				// Only parsed if the consumer asks for the Json, in which case it would've had to parse it anyway.
+				return PatchingInputStream.JsonInputStream.ofSerialized(cached);
+			}
+		}
+
+		final IoSupplier<InputStream> source = () -> new ByteArrayInputStream(data);
+		final LazyPatchingWrapper wrapper = new LazyPatchingWrapper(name, source, new ByteArrayInputStream(data));
+		final OutputCache.Recorder recorder = outputs.recorder(steps);
+
+		try {
+			if (applyPatches(type, name, steps, wrapper, null, recorder))
+				PatchMetrics.filePatched(name);
+		} catch (BailException e) {
+			return wrapper.getOrCreateStream();
+		} catch (Exception e) {
+			logException(name, e);
+			return wrapper.getOrCreateStream();
+		}
+
+		final JsonElement root = wrapper.get().getRoot();
+		final byte[] patched = serialize(name, root);
+
+		if (key != null)
+			outputs.put(key, recorder, patched);
+
+		return new PatchingInputStream.JsonInputStream(root, patched);
+	}
+
+	private static byte[] serialize(ResourceLocation name, JsonElement root) {
+		PatchTrace.begin("serialize", name, null);
+		ReloadProfiling.push("serialize");
+
+		try {
+			final long start = PatchMetrics.start();
+			final byte[] ret = PatchUtil.writeCompactJson(root);
+			PatchMetrics.serialized(name, ret.length, start);
+			return ret;
+		} finally {
+			ReloadProfiling.pop();
+			PatchTrace.end("serialize");
+		}
+	}
+
+	private static void logException(ResourceLocation name, Exception e) {
+		if (LOG_EXCEPTIONS.getAndSet(false))
+			Patched.platform().logger().error("An exception occurred while attempting to patch {}. Further exceptions will not be reported.", name, e);
+	}
+
+	/**
+	 * Collects the patches from all of the packs with the given pack type that apply to the given file, in the order they should be applied.
+	 * @param manager The resource manager that the file is from.
+	 * @param from The resource or data pack that the file originated from.
+	 * @param type The type of pack this file is from.
+	 * @param name The location of the file.
+	 * @param listedTargets The patch targets of the file, if they were already {@linkplain #resolveListedTargets(FallbackResourceManagerHidingTreeMap) resolved}.
+	 * @return The patches to apply.
+	 */
+	private static List<PatchStep> collectPatches(FallbackResourceManager manager, PackResources from, PackType type, ResourceLocation name, @Nullable FileTargets listedTargets) {
 		final ResourceLocation patchName = name.withPath(name.getPath() + ".patch");
 
-		final MutableObject<PatchContext> context = new MutableObject<>();
+		final List<PatchStep> steps = new ArrayList<>();
 
 		from = findTrueSource(from, type, name);
 
 		final PatchTargetManager targetManager = PATCH_TARGET_MANAGERS.get(type);
-		final Map<PackResources, List<String>> targets = targetManager == null ? Map.of() : targetManager.getTargets(name, from);
+		final FileTargets targets;
+
+		if (listedTargets != null)
+			targets = listedTargets;
+		else
+			targets = targetManager == null ? FileTargets.EMPTY : targetManager.getTargets(name, from);
 
 		if (DEBUG_TARGETS && !targets.isEmpty())
 			Patched.platform().logger().info("Targets for {} (from {}): {}", name, from, targets);
 
+		final PatchIndex index = PATCH_INDICES.get(type);
+		final List<PatchIndex.Candidate> candidates = index == null ? null : index.getCandidates(manager, name, from, targets);
+
+		if (candidates != null) {
+			// Every pack is indexed, so only the ones that actually have something for this file need to be looked at.
+			for (PatchIndex.Candidate candidate : candidates)
+				collectPatches(steps, type, name, patchName, new Entry(candidate.pack()), candidate.hasPatch(), targets);
+
+			return steps;
+		}
+
 		for (int i = manager.fallbacks.size() - 1; i >= 0; i--) {
 			final PackEntry packEntry = manager.fallbacks.get(i);
 			if (packEntry.resources() == null) continue;
@@ -140,47 +369,105 @@ public class MixinCallbacks {
 
 			if (hasPatches(entry.resources))
 				for (Entry pack : packsIn(entry, type, patchName)) {
-					PatchContext ctx = applyPatch(
-							type, pack.resources().getResource(type, patchName),
-							patchName.toString(), pack, wrapper, audit, context,
-							null
-							);
-
-					IFileAccess access = null;
-					for (String patch : targets.getOrDefault(pack.resources, List.of())) {
-						// We use the IFileAccess instead of grabbing it manually so that it's cached.
-						if (access == null)
-							if (ctx != null)
-								access = ctx.fileAccess();
-							else
-								access = new PatchedFileAccess(pack.resources);
-
-						applyPatch(
-								type, access.readIncludedPatch(patch),
-								"patches/" + patch + ".json.patch", pack, wrapper, audit, context,
-								name.toString()
-								);
-					}
+					// Only go looking for the patch if the pack could actually have it.
+					final boolean hasPatch = index == null || !index.isIndexed(pack.resources()) || index.getPacks(name).contains(pack.resources());
+					collectPatches(steps, type, name, patchName, pack, hasPatch, targets);
 
 					if (pack.resources() == from)
 						break;
 				}
 		}
 
-		return context.getValue() != null;
+		return steps;
 	}
 
-	private static PatchContext applyPatch(
-			PackType type,
-			@Nullable IoSupplier<InputStream> patchSupplier,
-			String patchName,
-			Entry pack,
-			LazyPatchingWrapper wrapper,
-			@Nullable PatchAudit audit,
-			MutableObject<PatchContext> context,
-			String explicitTargetName) {
+	/**
+	 * Collects the patches from the specified pack that apply to the given file.
+	 * @param steps The list to add the patches to.
+	 * @param type The type of pack the file is from.
+	 * @param name The location of the file.
+	 * @param patchName The location of the file's patch.
+	 * @param pack The pack.
+	 * @param hasPatch {@code true} if the pack may contain a patch for the file.
+	 * @param targets The patch targets of the file.
+	 */
+	private static void collectPatches(List<PatchStep> steps, PackType type, ResourceLocation name, ResourceLocation patchName, Entry pack, boolean hasPatch, FileTargets targets) {
+		if (hasPatch) {
+			final JsonPatch patch = readPatch(type, patchName, pack);
+			if (patch != null)
+				steps.add(new PatchStep(pack, patch, patchName.toString(), null, null));
+		}
+
+		IFileAccess access = null;
+		for (String patch : targets.get(pack.resources)) {
+			// We use the IFileAccess instead of grabbing it manually so that it's cached.
+			if (access == null)
+				access = new PatchedFileAccess(pack.resources, type);
+
+			final String includeName = "patches/" + patch + ".json.patch";
+			final long start = PatchMetrics.start();
+			final JsonPatch included;
+
+			try {
+				included = access.readIncludedPatch(patch);
+			} catch (Exception e) {
+				// Don't let one broken include take the rest of the file's patches down with it.
+				Patched.platform().logger().warn("Failed to read patch {} from {}:", includeName, pack.name(), e);
+				continue;
+			}
+
+			PatchMetrics.patchParsed(pack.name(), start);
+
+			if (included != null)
+				steps.add(new PatchStep(pack, included, includeName, patch, name.toString()));
+		}
+	}
+
+	/**
+	 * Applies the given patches to the given stream.
+	 * @param type The type of pack the stream is from.
+	 * @param name The location of the data.
+	 * @param steps The patches to apply.
+	 * @param wrapper The stream to patch.
+	 * @param audit The audit to record changes made by the patches.
+	 * @param recorder Records what the patches depend on, if the result is going to be cached.
+	 * @return {@code true} if at least one of the patches applied successfully.
+	 */
+	private static boolean applyPatches(PackType type, ResourceLocation name, List<PatchStep> steps, LazyPatchingWrapper wrapper, @Nullable PatchAudit audit, @Nullable OutputCache.Recorder recorder) {
+		RootEvaluator evaluator = PatchedTestConditions.getRootEvaluator(type);
+		if (recorder != null)
+			evaluator = recorder.evaluator(evaluator);
+
+		final PatchContext context = PatchUtil.CONTEXT.audit(audit).testEvaluator(evaluator);
+		boolean applied = false;
+
+		for (int i = 0; i < steps.size(); i++) {
+			final PatchStep step = steps.get(i);
+			IFileAccess access = new PatchedFileAccess(step.pack().resources(), type);
+			if (recorder != null)
+				access = recorder.fileAccess(i, access);
+
+			if (applyPatch(step, name, wrapper, audit, context.fileAccess(access)))
+				applied = true;
+			else if (recorder != null)
+				recorder.invalidate();
+		}
+
+		return applied;
+	}
+
+	@Nullable
+	private static JsonPatch readPatch(PackType type, ResourceLocation patchName, Entry pack) {
+		final Supplier<JsonPatch> loader = () -> readPatch(type, pack.resources().getResource(type, patchName), patchName.toString(), pack);
+		final PatchCache cache = PATCH_CACHES.get(type);
+		return cache != null ? cache.get(pack.resources(), patchName, loader) : loader.get();
+	}
+
+	@Nullable
+	private static JsonPatch readPatch(PackType type, @Nullable IoSupplier<InputStream> patchSupplier, String patchName, Entry pack) {
 		if (patchSupplier == null) return null;
 
+		final long start = PatchMetrics.start();
 		final String patchJson;
 
 		try (InputStream patchStream = patchSupplier.get()) {
@@ -193,49 +480,72 @@ public class MixinCallbacks {
 		final JsonPatch patch;
 
 		try {
-			patch = Patches.readPatch(PatchUtil.GSON, patchJson);
+			// Parse it only once, and build the patch from the same Json the guards were checked on.
+			final JsonElement json = JsonParser.parseString(patchJson);
+			final JsonObject guard = StaticGuards.findFailingGuard(json, type);
+			if (guard != null) {
+				Patched.platform().logger().atLevel(DEBUG ? Level.INFO : Level.DEBUG).log("Skipping patch {} from {}, since its test {} failed.", patchName, pack.name(), guard);
+				PatchMetrics.patchParsed(pack.name(), start);
+				return null;
+			}
+
+			patch = PatchUtil.GSON.fromJson(json, JsonPatch.class);
 		} catch (Exception e) {
 			Patched.platform().logger().warn("Failed to parse patch {} from {}:", patchName, pack.name(), e);
 			return null;
 		}
 
-		return applyPatch(type, patch, patchName, pack, wrapper, audit, context, explicitTargetName);
+		PatchMetrics.patchParsed(pack.name(), start);
+
+		return patch;
 	}
 
-	private static PatchContext applyPatch(
-			PackType type,
-			JsonPatch patch,
-			String patchName,
-			Entry pack,
+	private static boolean applyPatch(
+			PatchStep step,
+			ResourceLocation name,
 			LazyPatchingWrapper wrapper,
 			@Nullable PatchAudit audit,
-			MutableObject<PatchContext> context,
-			String explicitTargetName) {
+			PatchContext context) {
+		final PatchedEvents.ApplyPatch event = new PatchedEvents.ApplyPatch();
+		long start = 0;
+
 		try {
 			if (audit != null)
-				audit.setPatchPath(pack.name());
-			if (context.getValue() == null)
-				context.setValue(PatchUtil.CONTEXT.audit(audit).testEvaluator(PatchedTestConditions.getRootEvaluator(type)));
+				audit.setPatchPath(step.pack().name());
 
 			Patched.platform().logger().atLevel(DEBUG ? Level.INFO : Level.DEBUG).log("Applying patch {} from {}{}.",
-					patchName,
-					pack.name(),
-					explicitTargetName != null ? " to " + explicitTargetName : "");
+					step.patchName(),
+					step.pack().name(),
+					step.explicitTargetName() != null ? " to " + step.explicitTargetName() : "");
 
-			final PatchContext ctx = context.getValue().fileAccess(new PatchedFileAccess(pack.resources()));
+			// Parse the file first, so that it isn't counted as part of applying the patch.
+			final JsonDocument doc = wrapper.get();
+			start = PatchMetrics.start();
+			event.begin();
+			PatchTrace.begin("apply", name, step.patchName());
+			ReloadProfiling.push("apply");
 
-			patch.patch(wrapper.get(), ctx);
+			try {
+				step.patch().patch(doc, context);
+			} finally {
+				ReloadProfiling.pop();
+				PatchTrace.end("apply");
+			}
 
-			return ctx;
+			PatchMetrics.patchApplied(step.pack().name(), name, true, start);
+			event.commit(step.pack().name(), name, step.patchName(), true);
+			return true;
 		} catch (BailException e) {
 			throw e;
 		} catch (PatchingException e) {
-			Patched.platform().logger().warn("Failed to apply patch {} from {}:\n{}", patchName, pack.name(), e.toString());
+			Patched.platform().logger().warn("Failed to apply patch {} from {}:\n{}", step.patchName(), step.pack().name(), e.toString());
 		} catch (Exception e) {
-			Patched.platform().logger().warn("Failed to apply patch {} from {}:", patchName, pack.name(), e);
+			Patched.platform().logger().warn("Failed to apply patch {} from {}:", step.patchName(), step.pack().name(), e);
 		}
 
-		return null;
+		PatchMetrics.patchApplied(step.pack().name(), name, false, start);
+		event.commit(step.pack().name(), name, step.patchName(), false);
+		return false;
 	}
 
 	/**
@@ -267,36 +577,45 @@ public class MixinCallbacks {
 		if (!patching.initialized())
 			synchronized (patching) {
 				if (!patching.initialized()) {
-					if (Patched.platform().isGroup(entry.resources())) {
-						boolean enabled = false;
-
-						for (PackResources resources : Patched.platform().getChildren(entry.resources()))
-							enabled |= hasPatches(resources);
-
-						patching.setPatchedMetadata(enabled ? PatchedMetadata.CURRENT_VERSION : PatchedMetadata.DISABLED_METADATA);
-					} else {
-						final IoSupplier<InputStream> io = entry.resources().getRootResource("pack.mcmeta");
-						PatchedMetadata meta;
-
-						if (io != null)
-							try (InputStream is = io.get()) {
-								final String json = PatchUtil.readString(is);
-								final JsonElement elem = JsonParser.parseString(json);
-
-								meta = PatchedMetadata.of(elem, entry.name);
-							} catch (Exception e) {
-								Patched.platform().logger().warn("Failed to read pack.mcmeta in {}:", entry.name(), e);
-								meta = PatchedMetadata.DISABLED_METADATA;
-							}
-						else
-							meta = PatchedMetadata.DISABLED_METADATA;
-
-						if (!meta.patchingEnabled())
-							meta = Objects.requireNonNullElse(
-									Patched.platform().deriveMetadataFromMod(entry.resources()),
-									meta);
-
-						patching.setPatchedMetadata(meta);
+					final PatchedEvents.InitializeMetadata event = new PatchedEvents.InitializeMetadata();
+					event.begin();
+					final long start = PatchMetrics.start();
+
+					final boolean group = Patched.platform().isGroup(entry.resources());
+					boolean fromCache = false;
+
+					ReloadProfiling.push("patched_metadata");
+
+					try {
+						if (group) {
+							boolean enabled = false;
+
+							for (PackResources resources : Patched.platform().getChildren(entry.resources()))
+								enabled |= hasPatches(resources);
+
+							patching.setPatchedMetadata(enabled ? PatchedMetadata.CURRENT_VERSION : PatchedMetadata.DISABLED_METADATA);
+						} else {
+							final MetadataCache.Fingerprint fingerprint = MetadataCache.fingerprint(entry.resources());
+							final PatchedMetadata cached = MetadataCache.get(fingerprint);
+
+							patching.setPatchedMetadata(cached != null ? cached : readMetadata(entry, fingerprint));
+							fromCache = cached != null;
+						}
+					} finally {
+						ReloadProfiling.pop();
+					}
+
+					PatchMetrics.metadataInitialized(entry.name(), start);
+
+					if (event.shouldCommit()) {
+						final PatchedMetadata meta = patching.patchedMetadata();
+						event.pack = entry.name();
+						event.group = group;
+						event.cached = fromCache;
+						event.patchingEnabled = meta.patchingEnabled();
+						event.formatVersion = meta.formatVersion();
+						event.patchTargets = meta.patchTargets().size();
+						event.commit();
 					}
 
 					if (patching.patchedMetadata().patchingEnabled()) {
@@ -312,6 +631,66 @@ public class MixinCallbacks {
 			}
 	}
 
+	/**
+	 * Reads the {@code PatchedMetadata} of the specified pack from its {@code pack.mcmeta}, or the mod it belongs to.
+	 * Successfully read metadata is put in the {@link MetadataCache}.
+	 * @param entry The pack to read the metadata of.
+	 * @param fingerprint The pack's fingerprint in the {@code MetadataCache}, if it has one.
+	 * @return The metadata.
+	 */
+	private static PatchedMetadata readMetadata(Entry entry, @Nullable MetadataCache.Fingerprint fingerprint) {
+		final IoSupplier<InputStream> io = entry.resources().getRootResource("pack.mcmeta");
+		PatchedMetadata meta;
+
+		if (io != null)
+			try (InputStream is = io.get()) {
+				final String json = PatchUtil.readString(is);
+				final JsonElement elem = JsonParser.parseString(json);
+
+				meta = PatchedMetadata.of(elem, entry.name);
+			} catch (Exception e) {
+				Patched.platform().logger().warn("Failed to read pack.mcmeta in {}:", entry.name(), e);
+				// Don't cache this, so that the warning shows up again next time.
+				return Objects.requireNonNullElse(
+						Patched.platform().deriveMetadataFromMod(entry.resources()),
+						PatchedMetadata.DISABLED_METADATA);
+			}
+		else
+			meta = PatchedMetadata.DISABLED_METADATA;
+
+		if (!meta.patchingEnabled())
+			meta = Objects.requireNonNullElse(
+					Patched.platform().deriveMetadataFromMod(entry.resources()),
+					meta);
+
+		MetadataCache.put(fingerprint, meta);
+
+		return meta;
+	}
+
+	/**
+	 * <p>Initializes the {@code PatchedMetadata} of all of the specified packs (and their children) in parallel.</p>
+	 * <p>
+	 * Doing this up front means reading all the {@code pack.mcmeta} files doesn't happen one at a time,
+	 * and that reload threads never have to initialize packs (or wait on each other to do it) while patching.
+	 * </p>
+	 * @param packs The packs to initialize.
+	 */
+	private static void initializeAll(List<PackResources> packs) {
+		final List<PackResources> groups = packs.stream()
+				.filter(Patched.platform()::isGroup)
+				.toList();
+
+		// Groups derive their metadata from their children, so do the children first.
+		Stream.concat(
+				packs.stream().filter(pack -> !Patched.platform().isGroup(pack)),
+				groups.stream().flatMap(group -> Patched.platform().getChildren(group).stream()))
+			.parallel()
+			.forEach(MixinCallbacks::maybeInitialize);
+
+		groups.forEach(MixinCallbacks::maybeInitialize);
+	}
+
 	/**
 	 * Returns an {@link Iterable} of packs within the given pack.
 	 * In most cases, this will only be the given pack.
@@ -321,12 +700,16 @@ public class MixinCallbacks {
 	 * @return The packs containing the specified patch.
 	 */
 	private static Iterable<Entry> packsIn(Entry entry, PackType type, ResourceLocation patchName) {
-		if (Patched.platform().isGroup(entry.resources()))
+		if (Patched.platform().isGroup(entry.resources())) {
+			final GroupIndex groups = GROUP_INDICES.get(type);
+			if (groups != null)
+				return Iterables.transform(groups.getPatchingChildren(entry.resources(), patchName), Entry::new);
+
 			return Iterables.transform(
 					Iterables.filter(Patched.platform().getFilteredChildren(entry.resources(), type, patchName),
 							pack -> hasPatches(pack)),
 					Entry::new);
-		else if (hasPatches(entry.resources))
+		} else if (hasPatches(entry.resources))
 			return List.of(entry);
 
 		return List.of();
@@ -346,16 +729,58 @@ public class MixinCallbacks {
 	 * @return The true source of the file.
 	 */
 	private static PackResources findTrueSource(PackResources from, PackType type, ResourceLocation name) {
-		if (Patched.platform().isGroup(from))
+		if (Patched.platform().isGroup(from)) {
+			final GroupIndex groups = GROUP_INDICES.get(type);
+			if (groups != null)
+				return Objects.requireNonNullElse(groups.findOwner(from, name), from);
+
 			for (PackResources pack : Patched.platform().getFilteredChildren(from, type, name))
 				if (pack.getResource(type, name) != null)
 					return pack;
+		}
 
 		return from;
 	}
 
 	public static void setupTargetManager(PackType type, List<PackResources> packsByPriority) {
-		PATCH_TARGET_MANAGERS.put(type, new PatchTargetManager(type, packsByPriority));
+		ReloadProfiling.setupStarted();
+		initializeAll(packsByPriority);
+		ReloadProfiling.setupFinished();
+		MetadataCache.save();
+		PatchedTestConditions.clearCachedResults();
+
+		final CacheStats includeStats = PatchedFileAccess.clearCache(type);
+		if (includeStats.requestCount() != 0)
+			Patched.platform().logger().atLevel(DEBUG ? Level.INFO : Level.DEBUG).log("Include cache {} for the previous reload: {}", type.name(), includeStats);
+
+		final PatchTargetManager targetManager = new PatchTargetManager(type, packsByPriority);
+		PATCH_TARGET_MANAGERS.put(type, targetManager);
+		PATCH_INDICES.put(type, new PatchIndex(type, packsByPriority, targetManager));
+		GROUP_INDICES.put(type, new GroupIndex(type));
+
+		final PatchCache oldCache = PATCH_CACHES.put(type, new PatchCache());
+		if (oldCache != null)
+			Patched.platform().logger().atLevel(DEBUG ? Level.INFO : Level.DEBUG).log("Patch cache {} for the previous reload: {}", type.name(), oldCache);
+
+		if (OutputCache.ENABLED) {
+			final OutputCache oldOutputs = OUTPUT_CACHES.put(type, new OutputCache());
+			if (oldOutputs != null)
+				Patched.platform().logger().atLevel(DEBUG ? Level.INFO : Level.DEBUG).log("Output cache {} for the previous reload: {}", type.name(), oldOutputs);
+		}
+	}
+
+	/**
+	 * Called whenever a reload starts, right after the reload listeners have been kicked off.
+	 * @param instance The reload.
+	 * @param profiled Whether the reload is being profiled.
+	 */
+	@Internal
+	public static void onReloadStarted(ReloadInstance instance, boolean profiled) {
+		ReloadProfiling.reloadStarted(instance, profiled);
+
+		if (PatchTrace.ENABLED)
+			// Writing the trace can take a moment, so keep it off the thread that's finishing the reload.
+			instance.done().whenComplete((result, e) -> CompletableFuture.runAsync(PatchTrace::write, Util.ioPool()));
 	}
 
 	@VisibleForTesting
@@ -363,6 +788,37 @@ public class MixinCallbacks {
 		return Collections.unmodifiableMap(PATCH_TARGET_MANAGERS);
 	}
 
+	@VisibleForTesting
+	public static Map<PackType, PatchIndex> getPatchIndices() {
+		return Collections.unmodifiableMap(PATCH_INDICES);
+	}
+
+	@VisibleForTesting
+	public static Map<PackType, PatchCache> getPatchCaches() {
+		return Collections.unmodifiableMap(PATCH_CACHES);
+	}
+
+	@VisibleForTesting
+	public static Map<PackType, OutputCache> getOutputCaches() {
+		return Collections.unmodifiableMap(OUTPUT_CACHES);
+	}
+
+	@VisibleForTesting
+	public static Map<PackType, GroupIndex> getGroupIndices() {
+		return Collections.unmodifiableMap(GROUP_INDICES);
+	}
+
+	/**
+	 * A single patch to apply to a file.
+	 * @author EnderTurret
+	 * @param pack The pack the patch is from.
+	 * @param patch The patch itself.
+	 * @param patchName The name of the patch, for logging.
+	 * @param includePath If the patch targets the file through its {@code pack.mcmeta}, the path the patch is included by. Otherwise {@code null}.
+	 * @param explicitTargetName If the patch targets the file through its {@code pack.mcmeta}, the name of the file. Otherwise {@code null}.
+	 */
+	static record PatchStep(Entry pack, JsonPatch patch, String patchName, @Nullable String includePath, @Nullable String explicitTargetName) {}
+
 	/**
 	 * An alternative to ATing {@link PackEntry}'s constructor public.
 	 * @author EnderTurret
@@ -383,26 +839,38 @@ public class MixinCallbacks {
 	}
 
 	/**
-	 * A class that wraps an {@link InputStream} in such a way that we can avoid reading from it if no patching is performed.
+	 * <p>A class that wraps an {@link InputStream} in such a way that we can avoid reading from it if no patching is performed.</p>
+	 * <p>
+	 * The stream is parsed directly, without holding on to the original data.
+	 * In the rare case that it turns out not to be valid Json, the stream is reopened from its source so that the unpatched data can be handed back as-is.
+	 * </p>
 	 * @author EnderTurret
 	 */
 	private static class LazyPatchingWrapper {
 
+		private final ResourceLocation name;
+		private final IoSupplier<InputStream> source;
 		private InputStream stream;
-		private byte[] oldBytes;
 		private JsonDocument doc;
 
-		public LazyPatchingWrapper(InputStream stream) {
+		public LazyPatchingWrapper(ResourceLocation name, IoSupplier<InputStream> source, InputStream stream) {
+			this.name = name;
+			this.source = source;
 			this.stream = stream;
 		}
 
 		public InputStream getOrCreateStream() {
-			if (oldBytes == null) return Objects.requireNonNull(stream);
-
 			if (doc != null)
-				oldBytes = PatchUtil.GSON.toJson(doc.getRoot()).getBytes(StandardCharsets.UTF_8);
+				return new PatchingInputStream.JsonInputStream(doc.getRoot(), root -> serialize(name, root));
+
+			if (stream != null) return stream;
 
-			return new ByteArrayInputStream(oldBytes);
+			// We consumed the stream but couldn't parse it, so let whoever's reading it deal with the original data.
+			try {
+				return source.get();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to reopen unpatchable data", e);
+			}
 		}
 
 		public JsonDocument get() {
@@ -413,24 +881,28 @@ public class MixinCallbacks {
 		}
 
 		private JsonElement read() {
-			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-			try {
-				stream.transferTo(baos);
-				stream.close();
-				stream = null;
-			} catch (IOException e) {
-				throw new UncheckedIOException("Failed to transfer data to byte array", e);
-			}
-
-			oldBytes = baos.toByteArray();
-
-			String json = new String(oldBytes, StandardCharsets.UTF_8);
-
-			try {
-				return JsonParser.parseString(json);
-			} catch (Exception e) {
+			final PatchedEvents.ParseSource event = new PatchedEvents.ParseSource();
+			event.begin();
+			PatchTrace.begin("parse", name, null);
+			ReloadProfiling.push("parse");
+
+			final long start = PatchMetrics.start();
+			final CountingInputStream counting = new CountingInputStream(stream);
+
+			try (InputStreamReader reader = new InputStreamReader(counting, StandardCharsets.UTF_8)) {
+				final JsonElement ret = JsonParser.parseReader(reader);
+				PatchMetrics.sourceParsed(name, counting.getCount(), start);
+				event.commit(name, counting.getCount(), true);
+				return ret;
+			} catch (JsonParseException e) {
+				event.commit(name, counting.getCount(), false);
 				throw new BailException(e);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to read data", e);
+			} finally {
+				stream = null;
+				ReloadProfiling.pop();
+				PatchTrace.end("parse");
 			}
 		}
 	}
@@ -0,0 +1,420 @@
+package net.enderturret.patchedmod.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParser;
+
+import net.minecraft.Util;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.resources.IoSupplier;
+
+import net.enderturret.patched.IFileAccess;
+import net.enderturret.patched.patch.JsonPatch;
+import net.enderturret.patched.patch.PatchContext;
+import net.enderturret.patchedmod.Patched;
+import net.enderturret.patchedmod.PatchedTestConditions;
+import net.enderturret.patchedmod.RootEvaluator;
+import net.enderturret.patchedmod.internal.MixinCallbacks.PatchStep;
+import net.enderturret.patchedmod.util.PatchUtil;
+
+/**
+ * <p>An opt-in, content-addressed cache of patched files on disk, so that restarting with the same packs doesn't need to patch everything again.</p>
+ * <p>
+ * Entries are keyed by a hash of the unpatched data and of every patch that applies to it, in order.
+ * Each entry also remembers the test conditions the patches evaluated and the patches they included,
+ * and is only used if all of those still give the same results.
+ * Files where any patch failed to apply, or that used a test condition that can't be checked again later, are never cached.
+ * </p>
+ * <p>
+ * The cache is enabled with {@code -Dpatched.outputCache=true}.
+ * Entries that haven't been used in {@code patched.outputCacheMaxAge} days (30 by default) are deleted in the background on startup.
+ * </p>
+ * <p>
+ * Cache hits hand out the serialized data, which is only parsed again if the consumer {@linkplain net.enderturret.patchedmod.util.PatchingInputStream#getPatchedJson() asks for the Json}.
+ * So a hit saves reading the patches and applying them, but not parsing the result; the cache doesn't hold on to parsed Json, since that would take far more memory than the files themselves.
+ * </p>
+ * @author EnderTurret
+ */
+@Internal
+public final class OutputCache {
+
+	static final boolean ENABLED = Boolean.getBoolean("patched.outputCache");
+
+	private static final Duration MAX_AGE = Duration.ofDays(Long.getLong("patched.outputCacheMaxAge", 30));
+
+	private static final int MAGIC = 0x50544F43; // PTOC
+	private static final int VERSION = 1;
+
+	private static final AtomicBoolean PRUNED = new AtomicBoolean();
+
+	private final Path dir;
+
+	private final LoadingCache<PackResources, Map<String, Optional<HashCode>>> patchHashes = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(new CacheLoader<PackResources, Map<String, Optional<HashCode>>>() {
+				@Override
+				public Map<String, Optional<HashCode>> load(PackResources key) throws Exception {
+					return new ConcurrentHashMap<>();
+				}
+			});
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong stores = new AtomicLong();
+
+	OutputCache() {
+		dir = Patched.platform().getGameDirectory().resolve(".patched_cache").resolve("outputs");
+
+		if (!PRUNED.getAndSet(true))
+			// Walking the whole cache can take a while, so keep it off the reload thread.
+			CompletableFuture.runAsync(() -> prune(dir), Util.ioPool());
+	}
+
+	private static void prune(Path dir) {
+		if (!Files.isDirectory(dir)) return;
+
+		final FileTime cutoff = FileTime.from(Instant.now().minus(MAX_AGE));
+		int pruned = 0;
+
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator)
+				if (Files.getLastModifiedTime(file).compareTo(cutoff) < 0) {
+					Files.deleteIfExists(file);
+					pruned++;
+				}
+		} catch (IOException e) {
+			Patched.platform().logger().warn("Failed to prune patched output cache:", e);
+		}
+
+		if (pruned != 0)
+			Patched.platform().logger().debug("Pruned {} stale entries from the patched output cache.", pruned);
+	}
+
+	/**
+	 * Computes the cache key for the specified file, given its unpatched data and the patches that apply to it.
+	 * @param type The type of pack the file is from.
+	 * @param name The location of the file.
+	 * @param data The unpatched data.
+	 * @param steps The patches that apply to the file, in order.
+	 * @return The key, or {@code null} if one of the patches couldn't be read.
+	 */
+	@Nullable
+	HashCode key(PackType type, ResourceLocation name, byte[] data, List<PatchStep> steps) {
+		final Hasher hasher = Hashing.sha256().newHasher()
+				.putInt(VERSION)
+				.putUnencodedChars(type.name()).putByte((byte) 0)
+				.putUnencodedChars(name.toString()).putByte((byte) 0)
+				.putInt(data.length)
+				.putBytes(data);
+
+		for (PatchStep step : steps) {
+			final HashCode hash = hash(type, step);
+			if (hash == null) return null;
+
+			hasher.putUnencodedChars(step.pack().name()).putByte((byte) 0)
+					.putUnencodedChars(step.patchName()).putByte((byte) 0)
+					.putBytes(hash.asBytes());
+		}
+
+		return hasher.hash();
+	}
+
+	@Nullable
+	private HashCode hash(PackType type, PatchStep step) {
+		if (step.includePath() != null)
+			return hashIncluded(step.pack().resources(), step.includePath());
+
+		final ResourceLocation location = ResourceLocation.parse(step.patchName());
+		return hash(step.pack().resources(), step.patchName(), () -> step.pack().resources().getResource(type, location));
+	}
+
+	@Nullable
+	private HashCode hashIncluded(PackResources pack, String path) {
+		return hash(pack, "patches/" + path + ".json.patch", () -> pack.getRootResource("patches", path + ".json.patch"));
+	}
+
+	@Nullable
+	private HashCode hash(PackResources pack, String key, Supplier<IoSupplier<InputStream>> opener) {
+		return patchHashes.getUnchecked(pack).computeIfAbsent(key, k -> {
+			final IoSupplier<InputStream> sup = opener.get();
+			if (sup == null) return Optional.empty();
+
+			try (InputStream is = sup.get()) {
+				return Optional.of(Hashing.sha256().hashBytes(is.readAllBytes()));
+			} catch (IOException e) {
+				return Optional.empty();
+			}
+		}).orElse(null);
+	}
+
+	private Path getFile(HashCode key) {
+		final String hex = key.toString();
+		return dir.resolve(hex.substring(0, 2)).resolve(hex + ".bin");
+	}
+
+	/**
+	 * Looks up the patched data for the specified key.
+	 * @param type The type of pack the file is from.
+	 * @param key The key of the file.
+	 * @param steps The patches that apply to the file, which are used to check the patches they included.
+	 * @return The patched data, or {@code null} if it isn't cached or is out of date.
+	 */
+	@Nullable
+	byte[] get(PackType type, HashCode key, List<PatchStep> steps) {
+		final Path file = getFile(key);
+
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return miss();
+
+			final RootEvaluator evaluator = PatchedTestConditions.getRootEvaluator(type);
+			final PatchContext context = PatchUtil.CONTEXT.testEvaluator(evaluator);
+
+			final int conditions = in.readInt();
+			for (int i = 0; i < conditions; i++) {
+				final String condition = in.readUTF();
+				final JsonElement value = JsonParser.parseString(in.readUTF());
+				final boolean result = in.readBoolean();
+
+				if (evaluator.test(JsonNull.INSTANCE, condition, JsonNull.INSTANCE, value, context) != result)
+					return miss();
+			}
+
+			final int includes = in.readInt();
+			for (int i = 0; i < includes; i++) {
+				final int step = in.readInt();
+				final String path = in.readUTF();
+				final byte[] hash = in.readNBytes(in.readInt());
+
+				if (step >= steps.size()) return miss();
+				final HashCode current = hashIncluded(steps.get(step).pack().resources(), path);
+				if (current == null || !Arrays.equals(current.asBytes(), hash))
+					return miss();
+			}
+
+			final byte[] ret = in.readNBytes(in.readInt());
+			hits.incrementAndGet();
+			touch(file);
+
+			return ret;
+		} catch (NoSuchFileException e) {
+			return miss();
+		} catch (Exception e) {
+			Patched.platform().logger().debug("Failed to read patched output cache entry {}:", file, e);
+			return miss();
+		}
+	}
+
+	private static void touch(Path file) {
+		// Keep entries that are still in use from being pruned. Only bother once a day, though.
+		try {
+			final FileTime now = FileTime.from(Instant.now());
+			if (Files.getLastModifiedTime(file).toInstant().isBefore(now.toInstant().minus(Duration.ofDays(1))))
+				Files.setLastModifiedTime(file, now);
+		} catch (IOException e) {
+			// Most likely pruned in the meantime, which doesn't matter now that it's been read.
+		}
+	}
+
+	@Nullable
+	private byte[] miss() {
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Stores the patched data for the specified key.
+	 * @param key The key of the file.
+	 * @param recorder The recorder that was used while patching the file.
+	 * @param data The patched data.
+	 */
+	void put(HashCode key, Recorder recorder, byte[] data) {
+		if (!recorder.cacheable) return;
+
+		final List<HashCode> includeHashes = new ArrayList<>(recorder.includes.size());
+
+		for (Include include : recorder.includes) {
+			final HashCode hash = hashIncluded(recorder.steps.get(include.step()).pack().resources(), include.path());
+			if (hash == null) return;
+			includeHashes.add(hash);
+		}
+
+		final Path file = getFile(key);
+
+		try {
+			Files.createDirectories(file.getParent());
+			final Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+
+				out.writeInt(recorder.conditions.size());
+				for (Condition condition : recorder.conditions) {
+					out.writeUTF(condition.type());
+					out.writeUTF(condition.value());
+					out.writeBoolean(condition.result());
+				}
+
+				out.writeInt(recorder.includes.size());
+				for (int i = 0; i < recorder.includes.size(); i++) {
+					final Include include = recorder.includes.get(i);
+					final HashCode hash = includeHashes.get(i);
+
+					out.writeInt(include.step());
+					out.writeUTF(include.path());
+					out.writeInt(hash.bits() / 8);
+					out.write(hash.asBytes());
+				}
+
+				out.writeInt(data.length);
+				out.write(data);
+			}
+
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			stores.incrementAndGet();
+		} catch (Exception e) {
+			Patched.platform().logger().debug("Failed to write patched output cache entry {}:", file, e);
+		}
+	}
+
+	/**
+	 * Creates a new recorder, which keeps track of what the patches depended on while patching a file.
+	 * @param steps The patches that will be applied.
+	 * @return The new recorder.
+	 */
+	Recorder recorder(List<PatchStep> steps) {
+		return new Recorder(steps);
+	}
+
+	/**
+	 * @return The number of times patched data was found in the cache.
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of times patched data had to be computed.
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return The number of entries written to the cache.
+	 */
+	public long stores() {
+		return stores.get();
+	}
+
+	@Override
+	public String toString() {
+		return "OutputCache { hits = %s, misses = %s, stores = %s }".formatted(hits(), misses(), stores());
+	}
+
+	/**
+	 * Records the test conditions and included patches used while patching a file.
+	 * @author EnderTurret
+	 */
+	static final class Recorder {
+
+		private final List<PatchStep> steps;
+		private final List<Condition> conditions = new ArrayList<>();
+		private final List<Include> includes = new ArrayList<>();
+		private boolean cacheable = true;
+
+		private Recorder(List<PatchStep> steps) {
+			this.steps = steps;
+		}
+
+		/**
+		 * Marks the file as not cacheable, such as because a patch failed to apply.
+		 */
+		void invalidate() {
+			cacheable = false;
+		}
+
+		/**
+		 * Wraps the given test evaluator so that the conditions it evaluates are recorded.
+		 * @param evaluator The evaluator to wrap.
+		 * @return The wrapped evaluator.
+		 */
+		RootEvaluator evaluator(RootEvaluator evaluator) {
+			return new RootEvaluator() {
+				@Override
+				public boolean test(JsonElement root, String type, JsonElement target, JsonElement value, PatchContext context) {
+					final boolean result = evaluator.test(root, type, target, value, context);
+
+					// Conditions that look at the document can't be checked without patching it again.
+					if (!PatchedTestConditions.isContextFree(type))
+						cacheable = false;
+					else
+						conditions.add(new Condition(type, String.valueOf(value), result));
+
+					return result;
+				}
+
+				@Override
+				@Nullable
+				public PackType packType() {
+					return evaluator.packType();
+				}
+			};
+		}
+
+		/**
+		 * Wraps the given file access so that the patches included through it are recorded.
+		 * @param step The index of the patch the file access is for.
+		 * @param access The file access to wrap.
+		 * @return The wrapped file access.
+		 */
+		IFileAccess fileAccess(int step, IFileAccess access) {
+			return path -> {
+				final JsonPatch ret = access.readIncludedPatch(path);
+				includes.add(new Include(step, path));
+				return ret;
+			};
+		}
+	}
+
+	private static record Condition(String type, String value, boolean result) {}
+
+	private static record Include(int step, String path) {}
+}
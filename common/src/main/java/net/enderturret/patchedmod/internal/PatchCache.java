@@ -0,0 +1,88 @@
+package net.enderturret.patchedmod.internal;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+
+import net.enderturret.patched.patch.JsonPatch;
+
+/**
+ * <p>A cache of parsed patches, keyed by the pack they're in and their location.</p>
+ * <p>
+ * A new cache is created for every reload, so each patch is read and parsed at most once per reload,
+ * no matter how many times the file it targets is requested.
+ * Patches that failed to load are cached too, so that they're only reported once.
+ * </p>
+ * @author EnderTurret
+ */
+@Internal
+public final class PatchCache {
+
+	private final LoadingCache<PackResources, Map<ResourceLocation, Optional<JsonPatch>>> cache = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(new CacheLoader<PackResources, Map<ResourceLocation, Optional<JsonPatch>>>() {
+				@Override
+				public Map<ResourceLocation, Optional<JsonPatch>> load(PackResources key) throws Exception {
+					return new ConcurrentHashMap<>();
+				}
+			});
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	PatchCache() {}
+
+	/**
+	 * Returns the parsed patch at the specified location in the specified pack, loading it if necessary.
+	 * @param pack The pack containing the patch.
+	 * @param patchName The location of the patch.
+	 * @param loader Loads the patch if it isn't cached yet. Returns {@code null} if the patch doesn't exist or couldn't be loaded.
+	 * @return The patch, or {@code null} if it doesn't exist or couldn't be loaded.
+	 */
+	@Nullable
+	JsonPatch get(PackResources pack, ResourceLocation patchName, Supplier<JsonPatch> loader) {
+		final Map<ResourceLocation, Optional<JsonPatch>> patches = cache.getUnchecked(pack);
+		Optional<JsonPatch> ret = patches.get(patchName);
+
+		if (ret != null)
+			hits.incrementAndGet();
+		else
+			ret = patches.computeIfAbsent(patchName, k -> {
+				misses.incrementAndGet();
+				return Optional.ofNullable(loader.get());
+			});
+
+		return ret.orElse(null);
+	}
+
+	/**
+	 * @return The number of times a patch was found in the cache.
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of times a patch had to be loaded.
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "PatchCache { hits = %s, misses = %s }".formatted(hits(), misses());
+	}
+}
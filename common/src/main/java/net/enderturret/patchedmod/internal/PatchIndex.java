@@ -0,0 +1,276 @@
+package net.enderturret.patchedmod.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.cache.CacheBuilder;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.resources.FallbackResourceManager;
+import net.minecraft.server.packs.resources.FallbackResourceManager.PackEntry;
+
+import net.enderturret.patchedmod.Patched;
+import net.enderturret.patchedmod.util.PatchUtil;
+
+/**
+ * <p>An index of which packs contain a patch for which file, built once per reload.</p>
+ * <p>
+ * Without this, every patchable file would require asking every pack with patching enabled whether it has a patch for it,
+ * which almost always results in a miss (and a filesystem or zip lookup).
+ * </p>
+ * <p>
+ * Packs that weren't part of the reload the index was built for, or whose contents couldn't be listed, are not {@linkplain #isIndexed(PackResources) indexed}.
+ * Those still have to be probed directly.
+ * </p>
+ * <p>
+ * When every pack in a resource manager is indexed, the packs that could patch a file can be {@linkplain #getCandidates(FallbackResourceManager, ResourceLocation, PackResources, FileTargets) looked up directly},
+ * instead of going through every pack in the manager.
+ * </p>
+ * @author EnderTurret
+ */
+@Internal
+public final class PatchIndex {
+
+	private final PackType type;
+	private final Set<PackResources> indexed;
+	private final Map<ResourceLocation, List<PackResources>> packsByTarget;
+	private final Set<String> patchedNamespaces;
+
+	private final Map<PackResources, Integer> ordinals; // The position of each pack (or child of a group) in the order patches are applied in.
+	private final Map<PackResources, PackResources> groups; // The group each child belongs to.
+	private final Map<PackResources, Set<String>> patchingNamespaces; // The namespaces of each pack with patching enabled.
+
+	private final Map<FallbackResourceManager, Coverage> managerCoverage = CacheBuilder.newBuilder()
+			.weakKeys()
+			.<FallbackResourceManager, Coverage>build()
+			.asMap();
+
+	// Kept around so that checking the coverage of a manager doesn't create a new method reference every time.
+	private final Function<FallbackResourceManager, Coverage> coverageLoader = this::computeCoverage;
+
+	PatchIndex(PackType type, List<PackResources> packsByPriority, PatchTargetManager targetManager) {
+		this.type = type;
+
+		final Set<PackResources> indexed = Collections.newSetFromMap(new IdentityHashMap<>());
+		final Map<ResourceLocation, List<PackResources>> packsByTarget = new HashMap<>();
+		final Map<PackResources, Integer> ordinals = new IdentityHashMap<>();
+		final Map<PackResources, PackResources> groups = new IdentityHashMap<>();
+		final Map<PackResources, Set<String>> patchingNamespaces = new IdentityHashMap<>();
+
+		// Packs are iterated from highest to lowest priority, but the children of groups in order, matching the order patches are applied in.
+		for (int i = packsByPriority.size() - 1; i >= 0; i--) {
+			final PackResources pack = packsByPriority.get(i);
+
+			if (Patched.platform().isGroup(pack))
+				for (PackResources child : Patched.platform().getChildren(pack)) {
+					groups.put(child, pack);
+					ordinals.putIfAbsent(child, ordinals.size());
+					index(child, indexed, packsByTarget, patchingNamespaces);
+				}
+			else {
+				ordinals.putIfAbsent(pack, ordinals.size());
+				index(pack, indexed, packsByTarget, patchingNamespaces);
+			}
+		}
+
+		packsByTarget.replaceAll((k, v) -> List.copyOf(v));
+
+		final Set<String> patchedNamespaces = new HashSet<>();
+
+		for (ResourceLocation target : packsByTarget.keySet())
+			patchedNamespaces.add(target.getNamespace());
+
+		// Patch targets are matched by pattern, so the only way to know which namespaces they apply to is to try all of them.
+		for (PackResources pack : packsByPriority)
+			for (String namespace : pack.getNamespaces(type))
+				if (!patchedNamespaces.contains(namespace) && targetManager.hasTargets(namespace))
+					patchedNamespaces.add(namespace);
+
+		this.indexed = indexed;
+		this.packsByTarget = packsByTarget;
+		this.patchedNamespaces = Set.copyOf(patchedNamespaces);
+		this.ordinals = ordinals;
+		this.groups = groups;
+		this.patchingNamespaces = patchingNamespaces;
+
+		Patched.platform().logger().debug("Built PatchIndex {} with {} patched files across {} packs, patching namespaces {}.", type.name(), packsByTarget.size(), indexed.size(), patchedNamespaces);
+	}
+
+	private void index(PackResources pack, Set<PackResources> indexed, Map<ResourceLocation, List<PackResources>> packsByTarget, Map<PackResources, Set<String>> patchingNamespaces) {
+		// Packs without patching enabled never get asked for patches, so there's no point listing them.
+		if (!Patched.platform().hasPatches(pack)) {
+			indexed.add(pack);
+			return;
+		}
+
+		final List<ResourceLocation> patches = new ArrayList<>();
+		final Set<String> namespaces = pack.getNamespaces(type);
+		patchingNamespaces.put(pack, Set.copyOf(namespaces));
+
+		for (String namespace : namespaces) {
+			final List<ResourceLocation> found = PatchUtil.tryGetResources(pack, type, namespace, loc -> loc.getPath().endsWith(".patch"));
+			if (found == null) {
+				Patched.platform().logger().warn("Failed to list patches in {}; they will be looked up individually instead.", Patched.platform().getName(pack));
+				return;
+			}
+
+			patches.addAll(found);
+		}
+
+		for (ResourceLocation patch : patches) {
+			final ResourceLocation target = patch.withPath(patch.getPath().substring(0, patch.getPath().length() - ".patch".length()));
+			packsByTarget.computeIfAbsent(target, k -> new ArrayList<>(2)).add(pack);
+		}
+
+		indexed.add(pack);
+	}
+
+	/**
+	 * @param pack The pack to check.
+	 * @return {@code true} if the patches in the specified pack are known to this index.
+	 */
+	public boolean isIndexed(PackResources pack) {
+		return indexed.contains(pack);
+	}
+
+	/**
+	 * Returns the indexed packs that contain a patch for the specified file, in the order their patches are applied in.
+	 * @param target The file to look up.
+	 * @return The packs with a patch for the file.
+	 */
+	public List<PackResources> getPacks(ResourceLocation target) {
+		return packsByTarget.getOrDefault(target, List.of());
+	}
+
+	/**
+	 * <p>Finds the packs that may patch the specified file, in the order their patches are applied in.</p>
+	 * <p>
+	 * This gives the same result as going through every pack in the manager (and every child of the groups in it),
+	 * looking for the ones with a patch for the file or patch targets matching it,
+	 * except that only the packs that actually have something for the file are ever looked at.
+	 * </p>
+	 * @param manager The resource manager the file comes from.
+	 * @param target The file.
+	 * @param from The pack the file really comes from.
+	 * @param targets The patch targets matching the file.
+	 * @return The packs, or {@code null} if the manager contains packs that aren't indexed.
+	 */
+	@Nullable
+	List<Candidate> getCandidates(FallbackResourceManager manager, ResourceLocation target, PackResources from, FileTargets targets) {
+		final Coverage coverage = getCoverage(manager);
+		if (!coverage.covered()) return null;
+
+		final List<PackResources> patched = getPacks(target);
+		if (patched.isEmpty() && targets.isEmpty()) return List.of();
+
+		final List<Candidate> ret = new ArrayList<>(patched.size() + 1);
+
+		for (PackResources pack : patched)
+			if (isCandidate(coverage, pack, from))
+				ret.add(new Candidate(pack, true));
+
+		if (!targets.isEmpty()) {
+			for (PackResources pack : targets.packs())
+				if (!patched.contains(pack) && hasNamespace(pack, target.getNamespace()) && isCandidate(coverage, pack, from))
+					ret.add(new Candidate(pack, false));
+
+			ret.sort(Comparator.comparingInt(candidate -> ordinals.get(candidate.pack())));
+		}
+
+		return ret;
+	}
+
+	private boolean hasNamespace(PackResources pack, String namespace) {
+		// Packs without patching enabled aren't in here, and they can't patch anything either.
+		final Set<String> namespaces = patchingNamespaces.get(pack);
+		return namespaces != null && namespaces.contains(namespace);
+	}
+
+	private boolean isCandidate(Coverage coverage, PackResources pack, PackResources from) {
+		final PackResources group = groups.get(pack);
+		if (!coverage.packs().contains(group != null ? group : pack)) return false;
+
+		// Children of the group the file comes from only get to patch it if they come before the child it's from.
+		return group == null || groups.get(from) != group || ordinals.get(pack) <= ordinals.get(from);
+	}
+
+	/**
+	 * <p>Determines whether files in the specified namespace, coming from the specified resource manager, definitely can't be patched.</p>
+	 * <p>
+	 * This is the case when no pack contains any patches or patch targets for the namespace,
+	 * and every pack in the resource manager is {@linkplain #isIndexed(PackResources) indexed} (so there are no unknown patches lurking in it).
+	 * </p>
+	 * @param manager The resource manager the files come from.
+	 * @param namespace The namespace of the files.
+	 * @return {@code true} if the files can be skipped entirely.
+	 */
+	public boolean canSkip(FallbackResourceManager manager, String namespace) {
+		return !patchedNamespaces.contains(namespace) && getCoverage(manager).covered();
+	}
+
+	private Coverage getCoverage(FallbackResourceManager manager) {
+		// Try a plain get first, since computeIfAbsent() on a Guava cache allocates even when the value is already there.
+		final Coverage ret = managerCoverage.get(manager);
+		return ret != null ? ret : managerCoverage.computeIfAbsent(manager, coverageLoader);
+	}
+
+	private Coverage computeCoverage(FallbackResourceManager manager) {
+		final Set<PackResources> packs = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		for (PackEntry entry : manager.fallbacks) {
+			final PackResources pack = entry.resources();
+			if (pack == null) continue;
+
+			packs.add(pack);
+			if (indexed.contains(pack)) continue;
+
+			if (!Patched.platform().isGroup(pack)) return Coverage.NONE;
+
+			for (PackResources child : Patched.platform().getChildren(pack))
+				if (!indexed.contains(child))
+					return Coverage.NONE;
+		}
+
+		return new Coverage(true, packs);
+	}
+
+	@Override
+	public String toString() {
+		return ("PatchIndex {"
+				+ "\n    type = %s,"
+				+ "\n    indexed = %s,"
+				+ "\n    packsByTarget = %s,"
+				+ "\n    patchedNamespaces = %s"
+				+ "\n}").formatted(type, indexed, packsByTarget, patchedNamespaces);
+	}
+
+	/**
+	 * A pack that may patch a file.
+	 * @param pack The pack.
+	 * @param hasPatch {@code true} if the pack contains a patch for the file. Otherwise, it only has patch targets matching it.
+	 */
+	static record Candidate(PackResources pack, boolean hasPatch) {}
+
+	/**
+	 * Whether all of the packs in a resource manager are indexed.
+	 * @param covered {@code true} if they are.
+	 * @param packs The packs in the manager, if they're all indexed.
+	 */
+	private static record Coverage(boolean covered, Set<PackResources> packs) {
+
+		static final Coverage NONE = new Coverage(false, Set.of());
+	}
+}
@@ -0,0 +1,327 @@
+package net.enderturret.patchedmod.internal;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+
+import net.minecraft.resources.ResourceLocation;
+
+/**
+ * <p>Counts how much work Patched does, and how long it takes, so that the expensive packs can be found with {@code /patched stats}.</p>
+ * <p>
+ * Everything is counted in total, and broken down by the pack the patches come from and the namespace of the patched file.
+ * Counting is cheap enough to leave on, but can be disabled with {@code -Dpatched.metrics=false}.
+ * </p>
+ * @author EnderTurret
+ */
+@Internal
+public final class PatchMetrics {
+
+	static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("patched.metrics", "true"));
+
+	private static volatile PatchMetrics current = new PatchMetrics();
+
+	private final long since = System.currentTimeMillis();
+	private final Counters total = new Counters();
+	private final Map<String, Counters> byPack = new ConcurrentHashMap<>();
+	private final Map<String, Counters> byNamespace = new ConcurrentHashMap<>();
+
+	private PatchMetrics() {}
+
+	/**
+	 * @return The metrics collected since the last {@linkplain #reset() reset}.
+	 */
+	public static PatchMetrics get() {
+		return current;
+	}
+
+	/**
+	 * Starts collecting metrics from scratch.
+	 * @return The metrics collected up until now.
+	 */
+	public static PatchMetrics reset() {
+		final PatchMetrics ret = current;
+		current = new PatchMetrics();
+		return ret;
+	}
+
+	/**
+	 * @return A timestamp to pass to the other methods, or {@code 0} if metrics are disabled.
+	 */
+	static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	private static long since(long start) {
+		// Zero means whatever it was failed before it even started.
+		return start == 0 ? 0 : System.nanoTime() - start;
+	}
+
+	private Counters pack(String pack) {
+		final Counters ret = byPack.get(pack);
+		return ret != null ? ret : byPack.computeIfAbsent(pack, k -> new Counters());
+	}
+
+	private Counters namespace(ResourceLocation file) {
+		final Counters ret = byNamespace.get(file.getNamespace());
+		return ret != null ? ret : byNamespace.computeIfAbsent(file.getNamespace(), k -> new Counters());
+	}
+
+	/**
+	 * Records that a file was wrapped so that it could be patched.
+	 * @param file The file.
+	 */
+	static void fileWrapped(ResourceLocation file) {
+		if (!ENABLED) return;
+
+		final PatchMetrics metrics = current;
+		metrics.total.filesWrapped.increment();
+		metrics.namespace(file).filesWrapped.increment();
+	}
+
+	/**
+	 * Records that at least one patch was successfully applied to a file.
+	 * @param file The file.
+	 */
+	static void filePatched(ResourceLocation file) {
+		if (!ENABLED) return;
+
+		final PatchMetrics metrics = current;
+		metrics.total.filesPatched.increment();
+		metrics.namespace(file).filesPatched.increment();
+	}
+
+	/**
+	 * Records that a file was read and parsed so that it could be patched.
+	 * @param file The file.
+	 * @param bytes The size of the file.
+	 * @param start When parsing started, from {@link #start()}.
+	 */
+	static void sourceParsed(ResourceLocation file, long bytes, long start) {
+		if (!ENABLED) return;
+
+		final long nanos = since(start);
+		final PatchMetrics metrics = current;
+		metrics.total.sourceParsed(bytes, nanos);
+		metrics.namespace(file).sourceParsed(bytes, nanos);
+	}
+
+	/**
+	 * Records that a patch was read and parsed.
+	 * @param pack The name of the pack containing the patch.
+	 * @param start When parsing started, from {@link #start()}.
+	 */
+	static void patchParsed(String pack, long start) {
+		if (!ENABLED) return;
+
+		final long nanos = since(start);
+		final PatchMetrics metrics = current;
+		metrics.total.patchParseNanos.add(nanos);
+		metrics.pack(pack).patchParseNanos.add(nanos);
+	}
+
+	/**
+	 * Records that a patch was applied to a file.
+	 * @param pack The name of the pack containing the patch.
+	 * @param file The file.
+	 * @param success Whether the patch applied successfully.
+	 * @param start When applying the patch started, from {@link #start()}.
+	 */
+	static void patchApplied(String pack, ResourceLocation file, boolean success, long start) {
+		if (!ENABLED) return;
+
+		final long nanos = since(start);
+		final PatchMetrics metrics = current;
+		metrics.total.patchApplied(success, nanos);
+		metrics.pack(pack).patchApplied(success, nanos);
+		metrics.namespace(file).patchApplied(success, nanos);
+	}
+
+	/**
+	 * Records that a patched file was serialized.
+	 * @param file The file.
+	 * @param bytes The size of the serialized file.
+	 * @param start When serializing started, from {@link #start()}.
+	 */
+	static void serialized(ResourceLocation file, long bytes, long start) {
+		if (!ENABLED) return;
+
+		final long nanos = since(start);
+		final PatchMetrics metrics = current;
+		metrics.total.serialized(bytes, nanos);
+		metrics.namespace(file).serialized(bytes, nanos);
+	}
+
+	/**
+	 * Records that the Patched metadata of a pack was initialized.
+	 * @param pack The name of the pack.
+	 * @param start When initializing started, from {@link #start()}.
+	 */
+	static void metadataInitialized(String pack, long start) {
+		if (!ENABLED) return;
+
+		final long nanos = since(start);
+		final PatchMetrics metrics = current;
+		metrics.total.metadataNanos.add(nanos);
+		metrics.pack(pack).metadataNanos.add(nanos);
+	}
+
+	/**
+	 * @return The current totals, and those of each pack, to compare against later.
+	 */
+	public Snapshot snapshot() {
+		final Map<String, Totals> byPack = new HashMap<>();
+		this.byPack.forEach((k, v) -> byPack.put(k, v.totals()));
+		return new Snapshot(this, total.totals(), byPack);
+	}
+
+	/**
+	 * @return The time metrics started being collected, in milliseconds since the epoch.
+	 */
+	public long since() {
+		return since;
+	}
+
+	public Counters total() {
+		return total;
+	}
+
+	/**
+	 * @return The metrics for each pack, most expensive first.
+	 */
+	public List<Map.Entry<String, Counters>> byPack() {
+		return sorted(byPack);
+	}
+
+	/**
+	 * @return The metrics for each namespace, most expensive first.
+	 */
+	public List<Map.Entry<String, Counters>> byNamespace() {
+		return sorted(byNamespace);
+	}
+
+	private static List<Map.Entry<String, Counters>> sorted(Map<String, Counters> map) {
+		return map.entrySet().stream()
+				.sorted(Comparator.comparingLong((Map.Entry<String, Counters> e) -> e.getValue().totalNanos()).reversed()
+						.thenComparing(Map.Entry::getKey))
+				.toList();
+	}
+
+	/**
+	 * The counters for one pack, namespace, or everything.
+	 * Not every counter makes sense for every breakdown; patches come from packs, but files are only counted by namespace.
+	 * @author EnderTurret
+	 */
+	public static final class Counters {
+
+		private final LongAdder filesWrapped = new LongAdder();
+		private final LongAdder filesPatched = new LongAdder();
+		private final LongAdder patchesApplied = new LongAdder();
+		private final LongAdder patchesFailed = new LongAdder();
+		private final LongAdder bytesRead = new LongAdder();
+		private final LongAdder bytesWritten = new LongAdder();
+		private final LongAdder sourceParseNanos = new LongAdder();
+		private final LongAdder patchParseNanos = new LongAdder();
+		private final LongAdder applyNanos = new LongAdder();
+		private final LongAdder serializeNanos = new LongAdder();
+		private final LongAdder metadataNanos = new LongAdder();
+
+		private Counters() {}
+
+		private void sourceParsed(long bytes, long nanos) {
+			bytesRead.add(bytes);
+			sourceParseNanos.add(nanos);
+		}
+
+		private void patchApplied(boolean success, long nanos) {
+			(success ? patchesApplied : patchesFailed).increment();
+			applyNanos.add(nanos);
+		}
+
+		private void serialized(long bytes, long nanos) {
+			bytesWritten.add(bytes);
+			serializeNanos.add(nanos);
+		}
+
+		public long filesWrapped() { return filesWrapped.sum(); }
+		public long filesPatched() { return filesPatched.sum(); }
+		public long patchesApplied() { return patchesApplied.sum(); }
+		public long patchesFailed() { return patchesFailed.sum(); }
+		public long bytesRead() { return bytesRead.sum(); }
+		public long bytesWritten() { return bytesWritten.sum(); }
+		public long sourceParseNanos() { return sourceParseNanos.sum(); }
+		public long patchParseNanos() { return patchParseNanos.sum(); }
+		public long applyNanos() { return applyNanos.sum(); }
+		public long serializeNanos() { return serializeNanos.sum(); }
+		public long metadataNanos() { return metadataNanos.sum(); }
+
+		/**
+		 * @return The total time spent on anything, in nanoseconds.
+		 */
+		public long totalNanos() {
+			return sourceParseNanos() + patchParseNanos() + applyNanos() + serializeNanos() + metadataNanos();
+		}
+
+		Totals totals() {
+			return new Totals(filesWrapped(), filesPatched(), patchesApplied(), patchesFailed(),
+					sourceParseNanos(), patchParseNanos(), applyNanos(), serializeNanos(), metadataNanos());
+		}
+
+		@Override
+		public String toString() {
+			return "Counters { filesWrapped = %s, filesPatched = %s, patchesApplied = %s, patchesFailed = %s, bytesRead = %s, bytesWritten = %s, sourceParseNanos = %s, patchParseNanos = %s, applyNanos = %s, serializeNanos = %s, metadataNanos = %s }"
+					.formatted(filesWrapped(), filesPatched(), patchesApplied(), patchesFailed(), bytesRead(), bytesWritten(), sourceParseNanos(), patchParseNanos(), applyNanos(), serializeNanos(), metadataNanos());
+		}
+	}
+
+	/**
+	 * A fixed copy of some of the {@link Counters}, used to work out how much a single reload did.
+	 * @author EnderTurret
+	 */
+	public static record Totals(long filesWrapped, long filesPatched, long patchesApplied, long patchesFailed,
+			long sourceParseNanos, long patchParseNanos, long applyNanos, long serializeNanos, long metadataNanos) {
+
+		public static final Totals ZERO = new Totals(0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+		public Totals minus(Totals other) {
+			return new Totals(filesWrapped - other.filesWrapped, filesPatched - other.filesPatched,
+					patchesApplied - other.patchesApplied, patchesFailed - other.patchesFailed,
+					sourceParseNanos - other.sourceParseNanos, patchParseNanos - other.patchParseNanos,
+					applyNanos - other.applyNanos, serializeNanos - other.serializeNanos, metadataNanos - other.metadataNanos);
+		}
+
+		public long totalNanos() {
+			return sourceParseNanos + patchParseNanos + applyNanos + serializeNanos + metadataNanos;
+		}
+	}
+
+	/**
+	 * The totals at some point in time.
+	 * @param metrics The metrics the snapshot was taken of.
+	 * @param total The overall totals.
+	 * @param byPack The totals of each pack.
+	 */
+	public static record Snapshot(PatchMetrics metrics, Totals total, Map<String, Totals> byPack) {
+
+		/**
+		 * Works out what happened since this snapshot was taken.
+		 * If the metrics were reset in the meantime, everything since the reset is counted instead.
+		 * @return The difference between now and this snapshot.
+		 */
+		public Snapshot sinceThen() {
+			final PatchMetrics now = PatchMetrics.get();
+			final Snapshot current = now.snapshot();
+			final boolean reset = now != metrics;
+
+			final Map<String, Totals> byPack = new HashMap<>();
+			current.byPack.forEach((k, v) -> byPack.put(k, reset ? v : v.minus(this.byPack.getOrDefault(k, Totals.ZERO))));
+
+			return new Snapshot(now, reset ? current.total : current.total.minus(total), byPack);
+		}
+	}
+}
@@ -1,11 +1,12 @@
 package net.enderturret.patchedmod.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.jetbrains.annotations.ApiStatus.Internal;
@@ -26,52 +27,73 @@ import net.enderturret.patchedmod.util.meta.PatchedPackType;
 public final class PatchTargetManager {
 
 	private final PackType type;
-	@Nullable
-	private final List<PackResources> packsByPriority; // Organized by priority, exactly like the resource pack screen.
-	@Nullable
-	private final Map<String, Integer> priorityByPack;
+	private final PackResources[] packsByPriority; // Organized by priority, exactly like the resource pack screen. A pack's index is its "slot".
+	private final Map<String, Integer> priorityById; // Only used for packs without a slot, and pack_enabled.
 
 	private final List<BakedTarget> targets;
 	@Nullable
-	private final Map<String, List<BakedTarget>> targetsByNamespace;
+	private final Map<String, TargetMatcher> targetsByNamespace; // Baked lazily, at most once per namespace. Accessed concurrently by reload threads.
 
 	PatchTargetManager(PackType type, List<PackResources> packsByPriority) {
+		final PatchedEvents.BuildTargetManager event = new PatchedEvents.BuildTargetManager();
+		event.begin();
+
 		this.type = type;
 
 		packsByPriority = packsByPriority.stream()
 				.flatMap(pack -> (Patched.platform().isGroup(pack) ? Patched.platform().getChildren(pack) : List.of(pack)).stream())
 				.toList();
 
-		final Map<String, Integer> priorityByPack = new IdentityHashMap<>();
+		final Map<String, Integer> priorityById = new HashMap<>();
 		final List<BakedTarget> targets = new ArrayList<>();
 
 		for (int i = 0; i < packsByPriority.size(); i++) {
 			final PackResources pack = packsByPriority.get(i);
 
-			priorityByPack.put(pack.packId().intern(), i);
+			priorityById.put(pack.packId(), i);
+
+			if (pack instanceof IPatchingPackResources ppp) {
+				ppp.patched$setSlot(type, i);
 
-			if (pack instanceof IPatchingPackResources ppp)
 				for (PatchTarget target : ppp.patchedMetadata().patchTargets())
 					if (target.packType().map(PatchedPackType::toVanilla).orElse(type) == type)
 						for (Target subTarget : target.targets())
-							targets.add(new BakedTarget(subTarget, target.patch(), pack));
+							targets.add(new BakedTarget(subTarget, target.patch(), pack, i));
+			}
 		}
 
 		this.targets = List.copyOf(targets);
 		final boolean empty = this.targets.isEmpty();
-		targetsByNamespace = empty ? null : new HashMap<>();
-		this.packsByPriority = empty ? null : List.copyOf(packsByPriority);
-		this.priorityByPack = empty ? null : priorityByPack;
+		targetsByNamespace = empty ? null : new ConcurrentHashMap<>();
+		this.packsByPriority = packsByPriority.toArray(PackResources[]::new);
+		this.priorityById = Map.copyOf(priorityById);
 
 		Patched.platform().logger().debug("Built PatchTargetManager {} with {}", type.name(), packsByPriority.stream()
 				.map(pr -> pr.toString() + " (" + pr.packId() + ")").collect(Collectors.joining(", ")));
 
-		bakeNamespace("minecraft"); // This is the single-most likely filled namespace.
+		if (!empty)
+			getMatcher("minecraft"); // This is the single-most likely filled namespace.
+
+		if (event.shouldCommit()) {
+			event.packType = type.name();
+			event.packs = this.packsByPriority.length;
+			event.targets = this.targets.size();
+			event.commit();
+		}
 	}
 
-	private void bakeNamespace(String ns) {
-		if (targetsByNamespace == null) return;
+	/**
+	 * Returns the compiled targets that apply to the specified namespace, baking them if that hasn't been done yet.
+	 * @param ns The namespace.
+	 * @return The compiled targets for the namespace.
+	 */
+	private TargetMatcher getMatcher(String ns) {
+		// Try a plain get first so that the common case never has to lock anything.
+		final TargetMatcher ret = targetsByNamespace.get(ns);
+		return ret != null ? ret : targetsByNamespace.computeIfAbsent(ns, this::bakeNamespace);
+	}
 
+	private TargetMatcher bakeNamespace(String ns) {
 		final List<BakedTarget> targets = new ArrayList<>();
 
 		parent:
@@ -82,72 +104,166 @@ public final class PatchTargetManager {
 					continue parent;
 				}
 
-		targetsByNamespace.put(ns, List.copyOf(targets));
+		return new TargetMatcher(List.copyOf(targets));
 	}
 
-	Map<PackResources, List<String>> getTargets(ResourceLocation loc, PackResources from) {
-		if (targetsByNamespace == null) return Map.of();
+	/**
+	 * @param ns The namespace to check.
+	 * @return {@code true} if any patch targets could apply to files in the specified namespace.
+	 */
+	boolean hasTargets(String ns) {
+		return targetsByNamespace != null && !getMatcher(ns).targets().isEmpty();
+	}
 
-		bakeNamespace(loc.getNamespace());
+	/**
+	 * Finds the patches that target the specified file.
+	 * @param loc The file.
+	 * @param from The pack the file comes from. Patches from packs below it are ignored.
+	 * @return The patches targeting the file.
+	 */
+	FileTargets getTargets(ResourceLocation loc, PackResources from) {
+		if (targetsByNamespace == null) return FileTargets.EMPTY;
 
-		final int fromIndex = Objects.requireNonNull(priorityByPack.get(from.packId().intern()), "Priority for pack " + from + " (" + from.packId() + ") doesn't exist, was the pack registered?");
+		final int fromIndex = getPriority(from);
 
-		final List<BakedTarget> targets = targetsByNamespace.get(loc.getNamespace());
-		final Map<PackResources, List<String>> ret = new IdentityHashMap<>(targets.size());
+		final TargetMatcher matcher = getMatcher(loc.getNamespace());
+		final int[] matches = matcher.match(loc.getPath());
 
-		// Cache the last list used in the loop so we don't need to perform 40 lookups.
-		PackResources lastPack = null;
-		int lastIdx = -1;
-		List<String> lastList = null;
+		if (MixinCallbacks.DEBUG_TARGETS)
+			Patched.platform().logger().info("Matched {} against {}: {}", loc, matcher, Arrays.toString(matches));
 
-		parent:
-		for (BakedTarget target : targets) {
-			if (lastPack != target.from) {
-				lastPack = target.from;
-				lastIdx = priorityByPack.get(lastPack.packId().intern());
-				lastList = null; // Here we avoid creating hundreds of ArrayLists in the event there's no relevant targets.
-			}
+		if (matches.length == 0) return FileTargets.EMPTY;
 
-			if (MixinCallbacks.DEBUG_TARGETS)
-				Patched.platform().logger().info("Processing {} with last values {}, {}, {}...", target, lastPack, lastIdx, lastList);
+		final int[] kept = filterByPriority(matcher, matches, fromIndex);
 
-			// Don't allow patches from lower packs to affect a replacement from a higher one.
-			final int idx = priorityByPack.get(target.from.packId().intern());
+		final FileTargets ret = kept.length == 0 ? FileTargets.EMPTY : new FileTargets(matcher.targets(), kept, 0, kept.length);
 
-			if (MixinCallbacks.DEBUG_TARGETS)
-				Patched.platform().logger().info("  Priority check: {} < {}?", idx, fromIndex);
+		if (MixinCallbacks.DEBUG_TARGETS)
+			Patched.platform().logger().info("Returning {}", ret);
 
-			if (idx < fromIndex) break;
+		return ret;
+	}
 
-			if (MixinCallbacks.DEBUG_TARGETS)
-				Patched.platform().logger().info("  Trying patterns {} on {}", target.target().path(), loc.getPath());
+	/**
+	 * <p>Finds the patches that target each of the specified files, all in one go.</p>
+	 * <p>
+	 * This is meant for whole directory listings, where most files share a namespace (and so a compiled target set),
+	 * and avoids allocating anything for each file beyond what's needed to hold the results.
+	 * </p>
+	 * @param locs The files.
+	 * @param froms The pack each file comes from, in the same order as {@code locs}.
+	 * @return The patches targeting each file.
+	 */
+	TargetBatch getTargets(List<ResourceLocation> locs, List<PackResources> froms) {
+		if (locs.size() != froms.size()) throw new IllegalArgumentException("Got " + locs.size() + " files but " + froms.size() + " packs");
 
-			for (IPattern pattern : target.target().path()) {
-				if (MixinCallbacks.DEBUG_TARGETS)
-					Patched.platform().logger().info("    Trying pattern {} ({}) on {}", pattern, pattern.getClass().getSimpleName(), loc.getPath());
+		final TargetMatcher[] matchers = new TargetMatcher[locs.size()];
+		final int[] offsets = new int[locs.size() + 1];
 
-				if (pattern.test(loc.getPath())) {
-					if (lastList == null)
-						lastList = ret.computeIfAbsent(lastPack, k -> new ArrayList<>(5));
+		if (targetsByNamespace == null) return new TargetBatch(matchers, offsets, new int[0]);
 
-					lastList.add(target.patch);
+		int[] indices = new int[Math.max(16, locs.size())];
+		int size = 0;
 
-					if (MixinCallbacks.DEBUG_TARGETS)
-						Patched.platform().logger().info("    Success: added {} to {}", target.patch, lastList);
+		String lastNamespace = null;
+		TargetMatcher matcher = null;
 
-					continue parent;
-				}
+		for (int i = 0; i < locs.size(); i++) {
+			final ResourceLocation loc = locs.get(i);
+
+			if (!loc.getNamespace().equals(lastNamespace)) {
+				lastNamespace = loc.getNamespace();
+				matcher = getMatcher(lastNamespace);
+			}
+
+			offsets[i] = size;
+			if (matcher.targets().isEmpty()) continue;
+
+			if (indices.length - size < matcher.maxMatches())
+				indices = Arrays.copyOf(indices, Math.max(indices.length * 2, size + matcher.maxMatches()));
+
+			final int found = matcher.match(loc.getPath(), indices, size);
+			if (found == 0) continue;
+
+			final int kept = filterByPriority(matcher, indices, size, size + found, getPriority(froms.get(i)));
+			if (kept != 0) {
+				matchers[i] = matcher;
+				size += kept;
 			}
 		}
 
-		if (MixinCallbacks.DEBUG_TARGETS)
-			Patched.platform().logger().info("Returning {}", ret);
+		offsets[locs.size()] = size;
 
-		return ret;
+		return new TargetBatch(matchers, offsets, indices);
+	}
+
+	/**
+	 * Removes the matched targets from packs below the pack a file comes from.
+	 * @param matcher The matcher that found the targets.
+	 * @param matches The indices of the matched targets, which may be shared and so aren't modified.
+	 * @param fromIndex The priority of the pack the file comes from.
+	 * @return The remaining matches, which is {@code matches} itself if none were removed.
+	 */
+	private static int[] filterByPriority(TargetMatcher matcher, int[] matches, int fromIndex) {
+		int kept = 0;
+		for (int match : matches)
+			if (matcher.targets().get(match).priority >= fromIndex)
+				kept++;
+
+		// Nearly always the case, so nothing needs to be copied. (Unless the checks are being logged.)
+		if (kept == matches.length && !MixinCallbacks.DEBUG_TARGETS)
+			return matches;
+
+		final int[] ret = Arrays.copyOf(matches, matches.length);
+		final int size = filterByPriority(matcher, ret, 0, ret.length, fromIndex);
+		return size == ret.length ? ret : Arrays.copyOf(ret, size);
+	}
+
+	/**
+	 * Removes the matched targets from packs below the pack a file comes from, in place.
+	 * @param matcher The matcher that found the targets.
+	 * @param matches The indices of the matched targets.
+	 * @param start The start of the matches to filter.
+	 * @param end The end of the matches to filter.
+	 * @param fromIndex The priority of the pack the file comes from.
+	 * @return The number of remaining matches, which now start at {@code start}.
+	 */
+	private static int filterByPriority(TargetMatcher matcher, int[] matches, int start, int end, int fromIndex) {
+		int size = start;
+
+		for (int i = start; i < end; i++) {
+			final BakedTarget target = matcher.targets().get(matches[i]);
+
+			if (MixinCallbacks.DEBUG_TARGETS)
+				Patched.platform().logger().info("  Priority check for {}: {} < {}?", target, target.priority, fromIndex);
+
+			// Don't allow patches from lower packs to affect a replacement from a higher one.
+			if (target.priority < fromIndex) continue;
+
+			matches[size++] = matches[i];
+		}
+
+		return size - start;
+	}
+
+	/**
+	 * Returns the priority of the specified pack, which is the same as its slot.
+	 * @param pack The pack.
+	 * @return The pack's priority.
+	 */
+	private int getPriority(PackResources pack) {
+		if (pack instanceof IPatchingPackResources ppp) {
+			final int slot = ppp.patched$slot(type);
+			if (slot >= 0 && slot < packsByPriority.length && packsByPriority[slot] == pack)
+				return slot;
+		}
+
+		// Packs that weren't part of the reload this manager was built for (such as ones from /reload) don't have a valid slot, so fall back to their id.
+		return Objects.requireNonNull(priorityById.get(pack.packId()), () -> "Priority for pack " + pack + " (" + pack.packId() + ") doesn't exist, was the pack registered?");
 	}
 
 	public boolean containsPack(String name) {
-		return priorityByPack.containsKey(name.intern());
+		return priorityById.containsKey(name);
 	}
 
 	@Override
@@ -155,11 +271,11 @@ public final class PatchTargetManager {
 		return ("PatchTargetManager {"
 				+ "\n    type = %s,"
 				+ "\n    packsByPriority = %s,"
-				+ "\n    priorityByPack = %s,"
+				+ "\n    priorityById = %s,"
 				+ "\n    targets = %s,"
 				+ "\n    targetsByNamespace = %s"
-				+ "\n}").formatted(type, packsByPriority, priorityByPack, targets, targetsByNamespace);
+				+ "\n}").formatted(type, Arrays.toString(packsByPriority), priorityById, targets, targetsByNamespace);
 	}
 
-	static record BakedTarget(Target target, String patch, PackResources from) {}
+	static record BakedTarget(Target target, String patch, PackResources from, int priority) {}
 }
\ No newline at end of file
@@ -0,0 +1,260 @@
+package net.enderturret.patchedmod.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.stream.JsonWriter;
+
+import net.enderturret.patchedmod.Patched;
+
+/**
+ * <p>Records what every thread was patching and when, and writes it out as a Chrome trace-event file at the end of each reload.</p>
+ * <p>
+ * The resulting file can be opened in any viewer that understands the format, such as Perfetto or {@code chrome://tracing},
+ * which makes contention, stalls and unusually slow patches easy to spot.
+ * </p>
+ * <p>
+ * Tracing is enabled with {@code -Dpatched.trace=true}, and traces are written to {@code debug/patched}.
+ * Each thread records into its own buffer without any locking, in chunks that are handed off to the writer once they're full.
+ * {@code patched.traceMaxEvents} limits how many events are kept around at once (four million by default), after which new ones are dropped.
+ * Room is always kept for the ends of everything that was started, so events are only ever dropped in begin/end pairs.
+ * </p>
+ * @author EnderTurret
+ */
+final class PatchTrace {
+
+	static final boolean ENABLED = Boolean.getBoolean("patched.trace");
+
+	private static final int CHUNK_SIZE = 4096;
+	private static final int MAX_CHUNKS = Math.max(1, Integer.getInteger("patched.traceMaxEvents", 4 * 1024 * 1024) / CHUNK_SIZE);
+
+	private static final byte BEGIN = 0;
+	private static final byte END = 1;
+
+	private static final long EPOCH = System.nanoTime();
+
+	private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+	private static final Queue<Buffer> BUFFERS = new ConcurrentLinkedQueue<>();
+	private static final Queue<Chunk> FULL_CHUNKS = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger LIVE_CHUNKS = new AtomicInteger();
+
+	private PatchTrace() {}
+
+	/**
+	 * Records the start of something.
+	 * @param name What's being started.
+	 * @param file The file it's being done to.
+	 * @param source Where it comes from (such as the patch being applied), if that's interesting.
+	 */
+	static void begin(String name, Object file, @Nullable Object source) {
+		if (ENABLED)
+			BUFFER.get().add(BEGIN, name, file, source);
+	}
+
+	/**
+	 * Records the end of the most recently started thing.
+	 * @param name What's ending.
+	 */
+	static void end(String name) {
+		if (ENABLED)
+			BUFFER.get().add(END, name, null, null);
+	}
+
+	/**
+	 * Writes everything recorded since the last time this was called to a new trace file.
+	 */
+	static synchronized void write() {
+		if (!ENABLED) return;
+
+		final Path file = Patched.platform().getGameDirectory().resolve("debug").resolve("patched")
+				.resolve("trace-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH.mm.ss.SSS")) + ".json");
+
+		try {
+			Files.createDirectories(file.getParent());
+
+			int events = 0;
+
+			try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8); JsonWriter json = new JsonWriter(w)) {
+				json.beginObject().name("traceEvents").beginArray();
+
+				for (Buffer buffer : BUFFERS)
+					writeThreadName(json, buffer);
+
+				// Full chunks first, so that the events of each thread stay in order.
+				for (Chunk chunk; (chunk = FULL_CHUNKS.poll()) != null; ) {
+					events += chunk.write(json);
+					LIVE_CHUNKS.decrementAndGet();
+				}
+
+				for (Iterator<Buffer> it = BUFFERS.iterator(); it.hasNext(); ) {
+					final Buffer buffer = it.next();
+					events += buffer.current.write(json);
+
+					// A dead thread can't record anything else, so everything it recorded has been written now.
+					if (!buffer.thread.isAlive()) {
+						it.remove();
+						LIVE_CHUNKS.decrementAndGet();
+					}
+				}
+
+				json.endArray().name("displayTimeUnit").value("ms").endObject();
+			}
+
+			if (events == 0)
+				Files.delete(file);
+			else
+				Patched.platform().logger().info("Wrote {} trace events to {}.", events, file);
+		} catch (IOException e) {
+			Patched.platform().logger().warn("Failed to write trace to {}:", file, e);
+		}
+	}
+
+	private static void writeThreadName(JsonWriter json, Buffer buffer) throws IOException {
+		json.beginObject()
+				.name("name").value("thread_name")
+				.name("ph").value("M")
+				.name("pid").value(1)
+				.name("tid").value(buffer.tid)
+				.name("args").beginObject().name("name").value(buffer.threadName).endObject()
+				.endObject();
+	}
+
+	/**
+	 * The events recorded by one thread.
+	 * Only the owning thread ever adds to it.
+	 * @author EnderTurret
+	 */
+	private static final class Buffer {
+
+		private final Thread thread;
+		private final long tid;
+		private final String threadName;
+		private volatile Chunk current;
+
+		// Only touched by the owning thread.
+		private int depth;
+		private int open;
+		private final BitSet dropped = new BitSet();
+
+		private Buffer() {
+			thread = Thread.currentThread();
+			tid = thread.threadId();
+			threadName = thread.getName();
+			current = new Chunk(tid);
+			LIVE_CHUNKS.incrementAndGet();
+			BUFFERS.add(this);
+		}
+
+		private void add(byte phase, String name, @Nullable Object file, @Nullable Object source) {
+			if (phase == END) {
+				// Unbalanced ends can't be matched up with anything.
+				if (depth == 0) return;
+
+				// The begin was dropped, so its end has to go too.
+				if (dropped.get(--depth)) return;
+
+				// There's always room for this, since it was reserved by the begin.
+				open--;
+				current.add(phase, name, file, source, System.nanoTime() - EPOCH);
+				return;
+			}
+
+			final int level = depth++;
+			Chunk chunk = current;
+
+			// Keep room for this begin, its end and the ends of everything already open.
+			if (chunk.size + open + 2 > CHUNK_SIZE) {
+				// Too much is waiting to be written already, so drop it.
+				if (LIVE_CHUNKS.get() >= MAX_CHUNKS || open + 2 > CHUNK_SIZE) {
+					dropped.set(level);
+					return;
+				}
+
+				LIVE_CHUNKS.incrementAndGet();
+				FULL_CHUNKS.add(chunk);
+				current = chunk = new Chunk(tid);
+			}
+
+			dropped.clear(level);
+			open++;
+			chunk.add(phase, name, file, source, System.nanoTime() - EPOCH);
+		}
+	}
+
+	/**
+	 * A fixed-size run of events from one thread.
+	 * Events are written before the size is published, so the writer only ever sees complete ones.
+	 * @author EnderTurret
+	 */
+	private static final class Chunk {
+
+		private final long tid;
+		private final long[] times = new long[CHUNK_SIZE];
+		private final byte[] phases = new byte[CHUNK_SIZE];
+		private final String[] names = new String[CHUNK_SIZE];
+		private final Object[] files = new Object[CHUNK_SIZE];
+		private final Object[] sources = new Object[CHUNK_SIZE];
+		private volatile int size;
+
+		// Only touched by the writer.
+		private int written;
+
+		private Chunk(long tid) {
+			this.tid = tid;
+		}
+
+		private void add(byte phase, String name, @Nullable Object file, @Nullable Object source, long time) {
+			final int i = size;
+			times[i] = time;
+			phases[i] = phase;
+			names[i] = name;
+			files[i] = file;
+			sources[i] = source;
+			size = i + 1;
+		}
+
+		private int write(JsonWriter json) throws IOException {
+			final int size = this.size;
+			final int start = written;
+
+			for (int i = start; i < size; i++) {
+				json.beginObject()
+						.name("name").value(names[i])
+						.name("cat").value("patched")
+						.name("ph").value(phases[i] == BEGIN ? "B" : "E")
+						.name("ts").value(times[i] / 1000d)
+						.name("pid").value(1)
+						.name("tid").value(tid);
+
+				if (files[i] != null) {
+					json.name("args").beginObject().name("file").value(files[i].toString());
+					if (sources[i] != null)
+						json.name("source").value(sources[i].toString());
+					json.endObject();
+				}
+
+				json.endObject();
+
+				// Let go of everything as it's written, since the thread may hold on to this chunk for a while.
+				names[i] = null;
+				files[i] = null;
+				sources[i] = null;
+			}
+
+			written = size;
+			return size - start;
+		}
+	}
+}
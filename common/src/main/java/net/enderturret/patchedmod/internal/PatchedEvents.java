@@ -0,0 +1,121 @@
+package net.enderturret.patchedmod.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>The Java Flight Recorder events emitted by Patched, so that patching shows up as itself in JMC instead of as anonymous time inside resource loading.</p>
+ * <p>
+ * Like all JFR events, these cost next to nothing when nobody is recording them:
+ * the fields are only filled in once {@link Event#shouldCommit()} says the event is wanted.
+ * </p>
+ * @author EnderTurret
+ */
+final class PatchedEvents {
+
+	private static final String CATEGORY = "Patched";
+
+	private PatchedEvents() {}
+
+	@Name("patched.ApplyPatch")
+	@Label("Apply Patch")
+	@Category(CATEGORY)
+	@Description("A patch being applied to a file.")
+	static final class ApplyPatch extends Event {
+
+		@Label("Pack")
+		String pack;
+
+		@Label("Target")
+		@Description("The file being patched.")
+		String target;
+
+		@Label("Patch")
+		String patch;
+
+		@Label("Success")
+		boolean success;
+
+		void commit(String pack, Object target, String patch, boolean success) {
+			if (shouldCommit()) {
+				this.pack = pack;
+				this.target = target.toString();
+				this.patch = patch;
+				this.success = success;
+				commit();
+			}
+		}
+	}
+
+	@Name("patched.ParseSource")
+	@Label("Parse Source")
+	@Category(CATEGORY)
+	@Description("A file being read and parsed so that it can be patched.")
+	static final class ParseSource extends Event {
+
+		@Label("Target")
+		String target;
+
+		@Label("Bytes Read")
+		@DataAmount
+		long bytes;
+
+		@Label("Success")
+		boolean success;
+
+		void commit(Object target, long bytes, boolean success) {
+			if (shouldCommit()) {
+				this.target = target.toString();
+				this.bytes = bytes;
+				this.success = success;
+				commit();
+			}
+		}
+	}
+
+	@Name("patched.InitializePackMetadata")
+	@Label("Initialize Pack Metadata")
+	@Category(CATEGORY)
+	@Description("The Patched metadata of a pack being read.")
+	static final class InitializeMetadata extends Event {
+
+		@Label("Pack")
+		String pack;
+
+		@Label("Group")
+		boolean group;
+
+		@Label("Cached")
+		@Description("Whether the metadata came from the on-disk metadata cache.")
+		boolean cached;
+
+		@Label("Patching Enabled")
+		boolean patchingEnabled;
+
+		@Label("Format Version")
+		byte formatVersion;
+
+		@Label("Patch Targets")
+		int patchTargets;
+	}
+
+	@Name("patched.BuildTargetManager")
+	@Label("Build Target Manager")
+	@Category(CATEGORY)
+	@Description("The patch targets of every pack being collected for a reload.")
+	static final class BuildTargetManager extends Event {
+
+		@Label("Pack Type")
+		String packType;
+
+		@Label("Packs")
+		int packs;
+
+		@Label("Targets")
+		int targets;
+	}
+}
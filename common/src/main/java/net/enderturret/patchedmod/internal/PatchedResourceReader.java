@@ -0,0 +1,117 @@
+package net.enderturret.patchedmod.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonElement;
+
+import net.minecraft.server.packs.resources.IoSupplier;
+import net.minecraft.server.packs.resources.Resource;
+
+import net.enderturret.patchedmod.util.PatchingInputStream;
+
+/**
+ * <p>
+ * {@code PatchedResourceReader} wraps the reader returned by {@link Resource#openAsReader()},
+ * and also keeps track of the {@link PatchingInputStream} underneath it, if there is one.
+ * </p>
+ * <p>
+ * The purpose of this class is to let the Json reload listeners grab the {@linkplain PatchingInputStream#getPatchedJson() patched Json} directly
+ * instead of parsing the serialized form of it again.
+ * It still works as a normal reader for anyone else.
+ * </p>
+ * <p>
+ * The reader itself is still opened by whatever {@code openAsReader()} call the listener would have made, so other mods wrapping that call keep working.
+ * The patched Json is only handed off if exactly one patched stream was opened for it, and the reader is the plain {@link BufferedReader} vanilla makes;
+ * a reader of some other type might not be reading that stream as-is.
+ * </p>
+ * @author EnderTurret
+ */
+@Internal
+public final class PatchedResourceReader extends BufferedReader {
+
+	/**
+	 * The patched streams opened on the current thread while {@linkplain #open(IoSupplier) opening a reader}.
+	 */
+	private static final ThreadLocal<Opening> OPENING = new ThreadLocal<>();
+
+	private final PatchingInputStream patching;
+
+	private PatchedResourceReader(BufferedReader reader, PatchingInputStream patching) {
+		super(reader);
+		this.patching = patching;
+	}
+
+	/**
+	 * Opens a reader with the specified opener, keeping track of the patched stream it reads from, if any.
+	 * @param opener Opens the reader, usually by calling {@link Resource#openAsReader()}.
+	 * @return The reader, which is only wrapped in a {@code PatchedResourceReader} if its patched Json can be handed off.
+	 * @throws IOException If an I/O error occurs when opening the resource.
+	 */
+	public static BufferedReader open(IoSupplier<BufferedReader> opener) throws IOException {
+		final Opening previous = OPENING.get();
+		final Opening opening = new Opening();
+		OPENING.set(opening);
+
+		final BufferedReader ret;
+
+		try {
+			ret = opener.get();
+		} finally {
+			OPENING.set(previous);
+		}
+
+		return opening.stream != null && !opening.ambiguous && ret.getClass() == BufferedReader.class
+				? new PatchedResourceReader(ret, opening.stream)
+				: ret;
+	}
+
+	/**
+	 * Records that the specified patched stream was opened, in case a reader is being {@linkplain #open(IoSupplier) opened} for it.
+	 * @param stream The stream.
+	 * @return {@code stream}.
+	 */
+	static PatchingInputStream opened(PatchingInputStream stream) {
+		final Opening opening = OPENING.get();
+
+		if (opening != null) {
+			opening.ambiguous |= opening.stream != null;
+			opening.stream = stream;
+		}
+
+		return stream;
+	}
+
+	/**
+	 * @return The patched Json, or {@code null} if it wasn't patched and should be read normally.
+	 */
+	@Nullable
+	public JsonElement getPatchedJson() {
+		return patching.getPatchedJson();
+	}
+
+	/**
+	 * Returns the patched Json from the given reader, if it is a {@code PatchedResourceReader} and was patched.
+	 * @param reader The reader.
+	 * @return The patched Json, or {@code null} if it should be read normally.
+	 */
+	@Nullable
+	public static JsonElement getPatchedJson(Reader reader) {
+		return reader instanceof PatchedResourceReader prr ? prr.getPatchedJson() : null;
+	}
+
+	/**
+	 * The patched streams opened while opening a reader.
+	 * @author EnderTurret
+	 */
+	private static final class Opening {
+
+		@Nullable
+		private PatchingInputStream stream;
+		private boolean ambiguous;
+	}
+}
@@ -0,0 +1,234 @@
+package net.enderturret.patchedmod.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Cleaner;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.minecraft.server.packs.resources.IoSupplier;
+
+import net.enderturret.patchedmod.Patched;
+import net.enderturret.patchedmod.util.PatchingInputStream;
+
+/**
+ * <p>Optionally patches listed resources in the background, before anyone actually opens them.</p>
+ * <p>
+ * Reload listeners tend to list a whole directory and then read every file in it one at a time.
+ * When prefetching is enabled, each patchable file returned by {@code listResources()} is handed to a small thread pool
+ * as soon as the listing is complete (and the patch targets of the listed files are resolved),
+ * so that by the time the listener gets to it the patched data is usually ready.
+ * Files that turn out to have nothing to patch are remembered, so that opening them doesn't go through patching again.
+ * </p>
+ * <p>
+ * Only the serialized form of the patched data is kept, so that the limit on the amount of data waiting to be read is an actual limit on memory.
+ * The listener then parses it again if it wants the Json, which is cheap next to reading and patching the original file.
+ * Once the limit is reached, files are patched when they're opened, like normal.
+ * Files that haven't been picked up by the pool yet when they're opened are also just patched on the spot.
+ * </p>
+ * <p>
+ * Prefetching is enabled with {@code -Dpatched.prefetch=true}.
+ * {@code patched.prefetchThreads} sets the number of threads (half the number of processors by default),
+ * and {@code patched.prefetchMaxBytes} the amount of patched data that may be waiting at once (64 MiB by default).
+ * </p>
+ * @author EnderTurret
+ */
+@Internal
+public final class Prefetcher {
+
+	static final boolean ENABLED = Boolean.getBoolean("patched.prefetch");
+
+	private static final int THREADS = Integer.getInteger("patched.prefetchThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+	private static final long MAX_BYTES_IN_FLIGHT = Long.getLong("patched.prefetchMaxBytes", 64 * 1024 * 1024);
+	private static final int MAX_QUEUED = 8192;
+
+	private static final int NEW = 0;
+	private static final int RUNNING = 1;
+	private static final int DONE = 2;
+	private static final int TAKEN = 3;
+
+	private static final AtomicLong BYTES_IN_FLIGHT = new AtomicLong();
+
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	@Nullable
+	private static volatile ThreadPoolExecutor executor;
+
+	private Prefetcher() {}
+
+	private static ThreadPoolExecutor executor() {
+		ThreadPoolExecutor ret = executor;
+
+		if (ret == null)
+			synchronized (Prefetcher.class) {
+				ret = executor;
+				if (ret == null) {
+					ret = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+							new ArrayBlockingQueue<>(MAX_QUEUED),
+							new ThreadFactoryBuilder().setNameFormat("Patched Prefetch #%d").setDaemon(true).build(),
+							// If we're that far behind, the files will just be patched when they're opened.
+							new ThreadPoolExecutor.DiscardPolicy());
+					ret.allowCoreThreadTimeOut(true);
+					executor = ret;
+				}
+			}
+
+		return ret;
+	}
+
+	/**
+	 * Prepares to patch the data from the given {@code IoSupplier} in the background, once {@linkplain #start(List) started}.
+	 * @param patching The {@code IoSupplier} that patches the data, as returned by {@link MixinCallbacks#chain}.
+	 * @param delegate The {@code IoSupplier} of the unpatched data.
+	 * @return An {@code IoSupplier} returning the prefetched data if it's ready, or otherwise doing the same thing as {@code patching}.
+	 */
+	static Prefetched prefetch(IoSupplier<InputStream> patching, IoSupplier<InputStream> delegate) {
+		final State state = new State();
+		final Prefetched ret = new Prefetched(patching, delegate, state);
+		CLEANER.register(ret, state::release);
+		return ret;
+	}
+
+	/**
+	 * Starts patching the data of the specified files in the background.
+	 * @param prefetches The files.
+	 */
+	static void start(List<Prefetched> prefetches) {
+		for (Prefetched prefetched : prefetches) {
+			final State state = prefetched.state;
+			final IoSupplier<InputStream> patching = prefetched.patching;
+
+			try {
+				executor().execute(() -> state.run(patching));
+			} catch (Exception e) {
+				// Rejected, most likely. Not a big deal.
+				state.status.compareAndSet(NEW, TAKEN);
+			}
+		}
+	}
+
+	/**
+	 * @return The amount of patched data currently waiting to be read, in bytes.
+	 */
+	public static long bytesInFlight() {
+		return BYTES_IN_FLIGHT.get();
+	}
+
+	/**
+	 * The state of a single prefetch, kept separate from {@link Prefetched} so that the data can be released when the latter is garbage collected without being read.
+	 * @author EnderTurret
+	 */
+	private static final class State {
+
+		private final AtomicInteger status = new AtomicInteger(NEW);
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		// Only null if no patches applied, or patching failed.
+		@Nullable
+		private volatile byte[] data;
+		// Whether patching finished without anything to patch, so the unpatched data can be used as-is.
+		private volatile boolean unpatched;
+		private volatile boolean abandoned;
+
+		private void run(IoSupplier<InputStream> patching) {
+			if (!status.compareAndSet(NEW, RUNNING)) return;
+
+			try {
+				if (BYTES_IN_FLIGHT.get() < MAX_BYTES_IN_FLIGHT)
+					try (InputStream is = patching.get()) {
+						if (is instanceof PatchingInputStream pis && pis.getPatchedJson() != null) {
+							// Read it out rather than serializing it ourselves, so that it's serialized the same way (and counted) as when it's read normally.
+							final byte[] data = pis.readAllBytes();
+							BYTES_IN_FLIGHT.addAndGet(data.length);
+							this.data = data;
+						} else
+							unpatched = true;
+					} catch (Exception e) {
+						Patched.platform().logger().debug("Failed to prefetch data; it will be patched when opened instead:", e);
+					}
+			} finally {
+				status.set(DONE);
+				done.complete(null);
+
+				// The supplier was thrown away while we were working on it.
+				if (abandoned)
+					release();
+			}
+		}
+
+		/**
+		 * Releases the prefetched data, if there is any and nobody took it.
+		 * Called once the {@code Prefetched} is garbage collected.
+		 */
+		private void release() {
+			abandoned = true;
+
+			if (status.compareAndSet(DONE, TAKEN)) {
+				final byte[] data = this.data;
+				if (data != null)
+					BYTES_IN_FLIGHT.addAndGet(-data.length);
+				this.data = null;
+			} else
+				status.compareAndSet(NEW, TAKEN);
+		}
+	}
+
+	/**
+	 * The {@code IoSupplier} handed out in place of the patching one.
+	 * @author EnderTurret
+	 */
+	static final class Prefetched implements IoSupplier<InputStream> {
+
+		private final IoSupplier<InputStream> patching;
+		private final IoSupplier<InputStream> delegate;
+		private final State state;
+
+		private Prefetched(IoSupplier<InputStream> patching, IoSupplier<InputStream> delegate, State state) {
+			this.patching = patching;
+			this.delegate = delegate;
+			this.state = state;
+		}
+
+		@Override
+		public InputStream get() throws IOException {
+			// Nobody has started on it yet, so do it ourselves.
+			if (state.status.compareAndSet(NEW, TAKEN))
+				return patching.get();
+
+			// Someone is working on it right now; they'll probably be done before we would be.
+			if (state.status.get() == RUNNING)
+				state.done.join();
+
+			// Nothing applies to it, which doesn't change no matter how many times it's opened.
+			if (state.unpatched)
+				return delegate.get();
+
+			if (!state.status.compareAndSet(DONE, TAKEN))
+				// Already used (or rejected), so open it again the normal way.
+				return patching.get();
+
+			final byte[] data = state.data;
+			state.data = null;
+
+			if (data == null)
+				// Something went wrong (and should be reported when patching it for real), or there was too much data waiting already.
+				return patching.get();
+
+			BYTES_IN_FLIGHT.addAndGet(-data.length);
+
+			final PatchingInputStream.JsonInputStream ret = PatchingInputStream.JsonInputStream.ofSerialized(data);
+			// Wrapped so that the patched Json can still be grabbed directly by the reload listeners.
+			return PatchedResourceReader.opened(new PatchingInputStream(() -> ret, (stream, audit) -> stream));
+		}
+	}
+}
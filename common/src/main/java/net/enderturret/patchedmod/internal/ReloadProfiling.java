@@ -0,0 +1,221 @@
+package net.enderturret.patchedmod.internal;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+
+import net.minecraft.server.packs.resources.ReloadInstance;
+import net.minecraft.server.packs.resources.SimplePreparableReloadListener;
+import net.minecraft.util.profiling.ActiveProfiler;
+import net.minecraft.util.profiling.InactiveProfiler;
+import net.minecraft.util.profiling.ProfilerFiller;
+
+import net.enderturret.patchedmod.Patched;
+import net.enderturret.patchedmod.mixin.ActiveProfilerAccess;
+
+/**
+ * <p>Makes Patched's work show up in vanilla's reload profiling (the one enabled by {@code debug.profiled_reload} or NeoForge's equivalent).</p>
+ * <p>
+ * Reload listeners are handed a {@link ProfilerFiller} for their preparation work, but the files they read are patched far away from it.
+ * So while a {@link SimplePreparableReloadListener} prepares, its profiler is kept in a thread local, and patching pushes its sections onto it.
+ * Vanilla's profiler only records anything between {@code startTick()} and {@code endTick()}, and starting a tick throws away what it recorded before,
+ * so sections are only pushed for listeners that profile their own preparation. Patching is timed for every one of them either way.
+ * </p>
+ * <p>
+ * Once a profiled reload is done, a breakdown of what Patched did during it is logged next to vanilla's report.
+ * This includes initializing metadata, which happens before the reload starts, and the time spent patching for each listener.
+ * Listeners that don't extend {@code SimplePreparableReloadListener} prepare however they like, so Patched can't tell their work apart;
+ * it's only counted in the overall totals.
+ * </p>
+ * @author EnderTurret
+ */
+@Internal
+public final class ReloadProfiling {
+
+	private static final ThreadLocal<State> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * The reload being set up on the current thread.
+	 * Reloads are set up and started on the same thread, but the client and server may be setting up theirs at the same time.
+	 */
+	private static final ThreadLocal<Profile> PENDING = new ThreadLocal<>();
+
+	private ReloadProfiling() {}
+
+	/**
+	 * Called before the metadata of the packs in a reload is initialized.
+	 */
+	static void setupStarted() {
+		PENDING.set(new Profile());
+	}
+
+	/**
+	 * Called once the metadata of the packs in a reload has been initialized.
+	 */
+	static void setupFinished() {
+		final Profile profile = PENDING.get();
+		if (profile != null)
+			profile.setupNanos = System.nanoTime() - profile.setupStart;
+	}
+
+	/**
+	 * Wraps the specified executor, so that tasks run with it can push sections onto the specified profiler.
+	 * @param executor The executor the listener prepares on.
+	 * @param profiler The listener's preparation profiler.
+	 * @param listener The name of the listener.
+	 * @return The wrapped executor, or {@code executor} if the reload isn't being profiled.
+	 */
+	public static Executor wrap(Executor executor, ProfilerFiller profiler, String listener) {
+		if (profiler == InactiveProfiler.INSTANCE) return executor;
+
+		Profile profile = PENDING.get();
+		if (profile == null) {
+			// The reload wasn't set up through Patched, so it can only be measured from here on.
+			profile = new Profile();
+			PENDING.set(profile);
+		}
+
+		final LongAdder nanos = profile.byListener.computeIfAbsent(listener, k -> new LongAdder());
+
+		return task -> executor.execute(() -> {
+			final State previous = CURRENT.get();
+			CURRENT.set(new State(profiler, nanos));
+
+			try {
+				task.run();
+			} finally {
+				CURRENT.set(previous);
+			}
+		});
+	}
+
+	/**
+	 * Pushes a section onto the current thread's profiler, if it has one.
+	 * Every call must be followed by a call to {@link #pop()}, in a {@code finally} block.
+	 * @param name The name of the section.
+	 */
+	static void push(String name) {
+		final State state = CURRENT.get();
+		if (state == null) return;
+
+		if (state.depth++ == 0) {
+			state.start = System.nanoTime();
+			state.pushing = !(state.profiler instanceof ActiveProfiler) || ((ActiveProfilerAccess) state.profiler).isStarted();
+		}
+
+		if (state.pushing)
+			state.profiler.push(name);
+	}
+
+	/**
+	 * Pops the section most recently pushed with {@link #push(String)}.
+	 */
+	static void pop() {
+		final State state = CURRENT.get();
+		if (state == null) return;
+
+		if (state.pushing)
+			state.profiler.pop();
+
+		if (--state.depth == 0)
+			state.nanos.add(System.nanoTime() - state.start);
+	}
+
+	/**
+	 * Called whenever a reload starts, right after the reload listeners have been kicked off.
+	 * If the reload is being profiled, logs what Patched did during it once it's done.
+	 * @param instance The reload.
+	 * @param profiled Whether the reload is being profiled.
+	 */
+	static void reloadStarted(ReloadInstance instance, boolean profiled) {
+		final Profile pending = PENDING.get();
+		PENDING.remove();
+
+		if (!profiled) return;
+
+		final Profile profile = pending != null ? pending : new Profile();
+
+		instance.done().whenComplete((result, e) -> {
+			final PatchMetrics.Snapshot delta = profile.start.sinceThen();
+			final PatchMetrics.Totals total = delta.total();
+
+			final StringBuilder sb = new StringBuilder("Patched breakdown:")
+					.append("\n  Files: ").append(total.filesWrapped()).append(" wrapped, ").append(total.filesPatched()).append(" patched")
+					.append("\n  Patches: ").append(total.patchesApplied()).append(" applied, ").append(total.patchesFailed()).append(" failed")
+					.append("\n  Parsing files: ").append(millis(total.sourceParseNanos()))
+					.append("\n  Parsing patches: ").append(millis(total.patchParseNanos()))
+					.append("\n  Applying patches: ").append(millis(total.applyNanos()))
+					.append("\n  Serializing: ").append(millis(total.serializeNanos()))
+					.append("\n  Initializing metadata: ").append(millis(total.metadataNanos()))
+					.append(" (").append(millis(profile.setupNanos)).append(" before the reload started)")
+					.append("\n  Total: ").append(millis(total.totalNanos()));
+
+			final List<Map.Entry<String, PatchMetrics.Totals>> packs = delta.byPack().entrySet().stream()
+					.filter(entry -> entry.getValue().totalNanos() > 0)
+					.sorted(Comparator.comparingLong((Map.Entry<String, PatchMetrics.Totals> entry) -> entry.getValue().totalNanos()).reversed())
+					.limit(10)
+					.toList();
+
+			if (!packs.isEmpty()) {
+				sb.append("\n  Most expensive packs:");
+				for (Map.Entry<String, PatchMetrics.Totals> entry : packs)
+					sb.append("\n    ").append(entry.getKey()).append(": ").append(millis(entry.getValue().totalNanos()))
+							.append(" (").append(entry.getValue().patchesApplied()).append(" applied)");
+			}
+
+			final List<Map.Entry<String, Long>> listeners = profile.byListener.entrySet().stream()
+					.map(entry -> Map.entry(entry.getKey(), entry.getValue().sum()))
+					.filter(entry -> entry.getValue() > 0)
+					.sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+					.limit(10)
+					.toList();
+
+			if (!listeners.isEmpty()) {
+				sb.append("\n  Most expensive listeners (other listeners are only counted in the totals):");
+				for (Map.Entry<String, Long> entry : listeners)
+					sb.append("\n    ").append(entry.getKey()).append(": ").append(millis(entry.getValue()));
+			}
+
+			Patched.platform().logger().info(sb.toString());
+		});
+	}
+
+	private static String millis(long nanos) {
+		return "%.2f ms".formatted(nanos / 1e6);
+	}
+
+	/**
+	 * What's being measured for a single reload.
+	 * @author EnderTurret
+	 */
+	private static final class Profile {
+
+		private final PatchMetrics.Snapshot start = PatchMetrics.get().snapshot();
+		private final long setupStart = System.nanoTime();
+		private final Map<String, LongAdder> byListener = new ConcurrentHashMap<>();
+		private long setupNanos;
+	}
+
+	/**
+	 * The profiler of the listener being prepared on a thread.
+	 * @author EnderTurret
+	 */
+	private static final class State {
+
+		private final ProfilerFiller profiler;
+		private final LongAdder nanos;
+		private int depth;
+		private boolean pushing;
+		private long start;
+
+		private State(ProfilerFiller profiler, LongAdder nanos) {
+			this.profiler = profiler;
+			this.nanos = nanos;
+		}
+	}
+}
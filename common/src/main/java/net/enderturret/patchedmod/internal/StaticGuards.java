@@ -0,0 +1,80 @@
+package net.enderturret.patchedmod.internal;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import net.minecraft.server.packs.PackType;
+
+import net.enderturret.patched.patch.PatchContext;
+import net.enderturret.patchedmod.PatchedTestConditions;
+import net.enderturret.patchedmod.RootEvaluator;
+import net.enderturret.patchedmod.util.PatchUtil;
+
+/**
+ * <p>Evaluates the "guards" of a patch ahead of time, so that patches that can't possibly apply are dropped before the file they target is even parsed.</p>
+ * <p>
+ * A guard is a {@code test} operation at the very start of a patch that doesn't look at the document,
+ * and uses a condition that {@linkplain PatchedTestConditions#isReloadConstant(String) gives the same result for the whole reload} (like {@code patched:mod_loaded}),
+ * which means its result is the same for every file.
+ * If one of them fails, the rest of the patch would never be applied anyway.
+ * </p>
+ * @author EnderTurret
+ */
+final class StaticGuards {
+
+	private StaticGuards() {}
+
+	/**
+	 * Evaluates the guards of the specified patch.
+	 * @param patch The patch, as Json.
+	 * @param type The type of pack the patch is from.
+	 * @return The guard that failed, or {@code null} if the patch should be applied.
+	 */
+	@Nullable
+	static JsonObject findFailingGuard(JsonElement patch, PackType type) {
+		if (patch instanceof JsonArray array) {
+			for (JsonElement op : array) {
+				final Boolean result = evaluate(op, type);
+				if (result == null) break;
+				if (!result) return op.getAsJsonObject();
+			}
+		} else if (Boolean.FALSE.equals(evaluate(patch, type)))
+			return patch.getAsJsonObject();
+
+		return null;
+	}
+
+	/**
+	 * Evaluates the specified operation if it is a guard.
+	 * @param op The operation.
+	 * @param type The type of pack the patch is from.
+	 * @return Whether the guard passed, or {@code null} if the operation isn't a guard (or failed to evaluate).
+	 */
+	@Nullable
+	private static Boolean evaluate(JsonElement op, PackType type) {
+		if (!(op instanceof JsonObject obj)
+				|| !(obj.get("op") instanceof JsonPrimitive opName) || !"test".equals(opName.getAsString())
+				|| !(obj.get("type") instanceof JsonPrimitive condition)
+				|| obj.has("path"))
+			return null;
+
+		final String conditionType = condition.getAsString();
+		if (!PatchedTestConditions.isReloadConstant(conditionType)) return null;
+
+		final boolean inverse = obj.get("inverse") instanceof JsonPrimitive p && p.isBoolean() && p.getAsBoolean();
+		final RootEvaluator evaluator = PatchedTestConditions.getRootEvaluator(type);
+		final PatchContext context = PatchUtil.CONTEXT.testEvaluator(evaluator);
+
+		try {
+			return evaluator.test(JsonNull.INSTANCE, conditionType, JsonNull.INSTANCE, obj.get("value"), context) != inverse;
+		} catch (Exception e) {
+			// Let it fail properly when the patch is applied, so it gets reported.
+			return null;
+		}
+	}
+}
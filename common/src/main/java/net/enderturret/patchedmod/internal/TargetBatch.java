@@ -0,0 +1,38 @@
+package net.enderturret.patchedmod.internal;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * <p>The patches that target each of a batch of files, as found by {@link PatchTargetManager#getTargets(java.util.List, java.util.List)}.</p>
+ * <p>The indices of the matched targets of all the files are kept in one flat array, with each file's starting at its offset.</p>
+ * @author EnderTurret
+ */
+final class TargetBatch {
+
+	private final TargetMatcher[] matchers; // null for files without targets
+	private final int[] offsets;
+	private final int[] indices;
+
+	TargetBatch(@Nullable TargetMatcher[] matchers, int[] offsets, int[] indices) {
+		this.matchers = matchers;
+		this.offsets = offsets;
+		this.indices = indices;
+	}
+
+	/**
+	 * @return The number of files in the batch.
+	 */
+	int size() {
+		return matchers.length;
+	}
+
+	/**
+	 * Returns the patches that target the file at the specified position in the batch.
+	 * @param i The position of the file.
+	 * @return The patches targeting the file.
+	 */
+	FileTargets get(int i) {
+		final TargetMatcher matcher = matchers[i];
+		return matcher == null ? FileTargets.EMPTY : new FileTargets(matcher.targets(), indices, offsets[i], offsets[i + 1]);
+	}
+}
@@ -0,0 +1,186 @@
+package net.enderturret.patchedmod.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.enderturret.patchedmod.Patched;
+import net.enderturret.patchedmod.internal.PatchTargetManager.BakedTarget;
+import net.enderturret.patchedmod.util.meta.IPattern;
+
+/**
+ * <p>A compiled form of the path patterns of every target in a namespace, which finds all matching targets for a path in one go.</p>
+ * <p>
+ * {@linkplain IPattern.Simple Simple} patterns are looked up in a hash table.
+ * {@linkplain IPattern.Regex Regex} patterns are combined into a single alternation, which is used to quickly rule out paths no regex matches.
+ * Only if that matches are the individual regexes tried, to figure out which targets they belong to.
+ * </p>
+ * @author EnderTurret
+ */
+final class TargetMatcher {
+
+	private static final int[] EMPTY = new int[0];
+
+	private static final Pattern BACKREFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
+	private final List<BakedTarget> targets;
+	private final Map<String, int[]> simple;
+	private final int[] regex;
+	@Nullable
+	private final Pattern combined;
+	private final int maxMatches;
+
+	TargetMatcher(List<BakedTarget> targets) {
+		this.targets = targets;
+
+		final Map<String, List<Integer>> simple = new HashMap<>();
+		final List<Integer> regex = new ArrayList<>();
+		final List<Pattern> patterns = new ArrayList<>();
+
+		for (int i = 0; i < targets.size(); i++) {
+			boolean hasRegex = false;
+
+			for (IPattern pattern : targets.get(i).target().path())
+				if (pattern instanceof IPattern.Simple s) {
+					final List<Integer> list = simple.computeIfAbsent(s.target(), k -> new ArrayList<>(2));
+					if (list.isEmpty() || list.get(list.size() - 1) != i)
+						list.add(i);
+				} else if (pattern instanceof IPattern.Regex r) {
+					hasRegex = true;
+					patterns.add(r.pattern());
+				}
+
+			if (hasRegex)
+				regex.add(i);
+		}
+
+		this.simple = simple.entrySet().stream()
+				.collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> toArray(e.getValue())));
+		this.regex = toArray(regex);
+		this.combined = combine(patterns);
+		this.maxMatches = this.simple.values().stream().mapToInt(a -> a.length).max().orElse(0) + this.regex.length;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		return list.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Combines the given patterns into one that matches anything any of them match.
+	 * @param patterns The patterns to combine.
+	 * @return The combined pattern, or {@code null} if they can't be combined safely.
+	 */
+	@Nullable
+	private static Pattern combine(List<Pattern> patterns) {
+		if (patterns.isEmpty()) return null;
+
+		final StringBuilder sb = new StringBuilder();
+
+		for (Pattern pattern : patterns) {
+			// Flags would apply to the whole thing, and backreferences would point to the wrong groups.
+			if (pattern.flags() != 0 || BACKREFERENCE.matcher(pattern.pattern()).find())
+				return null;
+
+			if (!sb.isEmpty()) sb.append('|');
+			sb.append("(?:").append(pattern.pattern()).append(')');
+		}
+
+		try {
+			return Pattern.compile(sb.toString());
+		} catch (PatternSyntaxException e) {
+			// Probably duplicate named groups.
+			Patched.platform().logger().debug("Failed to combine target patterns; falling back to testing them one by one:", e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return The targets this matcher was compiled from.
+	 */
+	List<BakedTarget> targets() {
+		return targets;
+	}
+
+	/**
+	 * @return The most targets a single path can match.
+	 */
+	int maxMatches() {
+		return maxMatches;
+	}
+
+	/**
+	 * Finds all targets whose path patterns match the given path.
+	 * @param path The path to match.
+	 * @return The indices of the matching targets in {@link #targets()}, in ascending order.
+	 * This may be shared with other calls, so it must not be modified.
+	 */
+	int[] match(String path) {
+		final int[] simpleMatches = simple.getOrDefault(path, EMPTY);
+
+		if (regex.length == 0 || (combined != null && !combined.matcher(path).matches()))
+			return simpleMatches;
+
+		final int[] ret = new int[simpleMatches.length + regex.length];
+		final int size = match(path, simpleMatches, ret, 0);
+
+		return size == ret.length ? ret : Arrays.copyOf(ret, size);
+	}
+
+	/**
+	 * Finds all targets whose path patterns match the given path, writing their indices into the given array.
+	 * @param path The path to match.
+	 * @param out The array to write the indices of the matching targets in {@link #targets()} to, in ascending order.
+	 * Must have room for at least {@link #maxMatches()} indices after {@code offset}.
+	 * @param offset Where to start writing in {@code out}.
+	 * @return The number of matching targets.
+	 */
+	int match(String path, int[] out, int offset) {
+		final int[] simpleMatches = simple.getOrDefault(path, EMPTY);
+
+		if (regex.length == 0 || (combined != null && !combined.matcher(path).matches())) {
+			System.arraycopy(simpleMatches, 0, out, offset, simpleMatches.length);
+			return simpleMatches.length;
+		}
+
+		return match(path, simpleMatches, out, offset) - offset;
+	}
+
+	private int match(String path, int[] simpleMatches, int[] out, int offset) {
+		int size = offset;
+		int s = 0;
+
+		for (int i : regex) {
+			// Merge in the simple matches that come before this one, so that everything stays in order.
+			while (s < simpleMatches.length && simpleMatches[s] < i)
+				out[size++] = simpleMatches[s++];
+
+			if (s < simpleMatches.length && simpleMatches[s] == i) {
+				out[size++] = simpleMatches[s++];
+				continue;
+			}
+
+			for (IPattern pattern : targets.get(i).target().path())
+				if (pattern instanceof IPattern.Regex && pattern.test(path)) {
+					out[size++] = i;
+					break;
+				}
+		}
+
+		while (s < simpleMatches.length)
+			out[size++] = simpleMatches[s++];
+
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "TargetMatcher { targets = %s, combined = %s }".formatted(targets, combined);
+	}
+}
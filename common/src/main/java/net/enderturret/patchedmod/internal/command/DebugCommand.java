@@ -10,6 +10,7 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.server.packs.PackType;
 
 import net.enderturret.patchedmod.internal.MixinCallbacks;
+import net.enderturret.patchedmod.internal.PatchIndex;
 import net.enderturret.patchedmod.internal.PatchTargetManager;
 import net.enderturret.patchedmod.internal.env.IEnvironment;
 
@@ -18,7 +19,9 @@ final class DebugCommand {
 	static <T> LiteralArgumentBuilder<T> create(IEnvironment<T> env) {
 		return env.literal("debug")
 				.then(env.literal("dumpTargetManagers")
-						.executes(ctx -> dumpTargetManagers(ctx, env)));
+						.executes(ctx -> dumpTargetManagers(ctx, env)))
+				.then(env.literal("dumpPatchIndices")
+						.executes(ctx -> dumpPatchIndices(ctx, env)));
 	}
 
 	private static <T> int dumpTargetManagers(CommandContext<T> ctx, IEnvironment<T> env) {
@@ -32,4 +35,16 @@ final class DebugCommand {
 
 		return Command.SINGLE_SUCCESS;
 	}
+
+	private static <T> int dumpPatchIndices(CommandContext<T> ctx, IEnvironment<T> env) {
+		final Map<PackType, PatchIndex> indices = MixinCallbacks.getPatchIndices();
+
+		for (PackType type : PackType.values())
+			env.sendSuccess(
+					ctx.getSource(),
+					Component.literal(type.name() + " : " + indices.get(type) + "\n"),
+					false);
+
+		return Command.SINGLE_SUCCESS;
+	}
 }
\ No newline at end of file
@@ -32,7 +32,8 @@ public final class PatchedCommand {
 		final var ret = env.literal("patched" + (env.client() ? "c" : ""))
 				.requires(src -> env.hasPermission(src, 2))
 				.then(DumpCommand.create(env))
-				.then(ListCommand.create(env));
+				.then(ListCommand.create(env))
+				.then(StatsCommand.create(env));
 
 		return MixinCallbacks.DEBUG ? ret.then(DebugCommand.create(env)) : ret;
 	}
@@ -0,0 +1,126 @@
+package net.enderturret.patchedmod.internal.command;
+
+import static net.enderturret.patchedmod.internal.command.PatchedCommand.translate;
+
+import java.util.List;
+import java.util.Map;
+
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+
+import net.minecraft.network.chat.MutableComponent;
+
+import net.enderturret.patchedmod.internal.PatchMetrics;
+import net.enderturret.patchedmod.internal.PatchMetrics.Counters;
+import net.enderturret.patchedmod.internal.env.IEnvironment;
+
+/**
+ * Defines the '/patched stats' subcommand, which shows how much work patching has taken since the metrics were last reset, and which packs and namespaces were responsible for it.
+ * @author EnderTurret
+ */
+final class StatsCommand {
+
+	// How many packs and namespaces to show when not showing all of them.
+	private static final int TOP = 5;
+
+	static <T> LiteralArgumentBuilder<T> create(IEnvironment<T> env) {
+		return env.literal("stats").executes(ctx -> showStats(ctx, env))
+				.then(env.literal("packs").executes(ctx -> showBreakdown(ctx, env, true)))
+				.then(env.literal("namespaces").executes(ctx -> showBreakdown(ctx, env, false)))
+				.then(env.literal("reset").executes(ctx -> reset(ctx, env)));
+	}
+
+	private static <T> int showStats(CommandContext<T> ctx, IEnvironment<T> env) {
+		final PatchMetrics metrics = PatchMetrics.get();
+		final Counters total = metrics.total();
+		final String command = ctx.getNodes().get(0).getNode().getName();
+
+		final MutableComponent c = translate("command.patched.stats.header", "Patching stats for the last %s:", formatDuration(System.currentTimeMillis() - metrics.since()));
+
+		c.append("\n  ").append(translate("command.patched.stats.files", "Files: %s wrapped, %s patched", total.filesWrapped(), total.filesPatched()));
+		c.append("\n  ").append(translate("command.patched.stats.patches", "Patches: %s applied, %s failed", total.patchesApplied(), total.patchesFailed()));
+		c.append("\n  ").append(translate("command.patched.stats.data", "Data: %s read, %s written", formatBytes(total.bytesRead()), formatBytes(total.bytesWritten())));
+		c.append("\n  ").append(translate("command.patched.stats.time", "Time: %s parsing files, %s parsing patches, %s applying patches, %s serializing",
+				formatNanos(total.sourceParseNanos()), formatNanos(total.patchParseNanos()), formatNanos(total.applyNanos()), formatNanos(total.serializeNanos())));
+
+		appendTop(c, metrics.byPack(), true, command);
+		appendTop(c, metrics.byNamespace(), false, command);
+
+		env.sendSuccess(ctx.getSource(), c, false);
+
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private static void appendTop(MutableComponent c, List<Map.Entry<String, Counters>> entries, boolean packs, String command) {
+		if (entries.isEmpty()) return;
+
+		c.append("\n\n").append((packs
+				? translate("command.patched.stats.top_packs", "Most expensive packs:")
+				: translate("command.patched.stats.top_namespaces", "Most expensive namespaces:"))
+				.setStyle(PatchedCommand.suggestCommand("/" + command + " stats " + (packs ? "packs" : "namespaces"))));
+
+		for (Map.Entry<String, Counters> entry : entries.subList(0, Math.min(TOP, entries.size())))
+			c.append("\n  ").append(describe(entry, packs));
+	}
+
+	private static <T> int showBreakdown(CommandContext<T> ctx, IEnvironment<T> env, boolean packs) {
+		final PatchMetrics metrics = PatchMetrics.get();
+		final List<Map.Entry<String, Counters>> entries = packs ? metrics.byPack() : metrics.byNamespace();
+
+		if (entries.isEmpty()) {
+			env.sendFailure(ctx.getSource(), translate("command.patched.stats.empty", "Nothing has been patched yet."));
+			return 0;
+		}
+
+		final MutableComponent c = packs
+				? translate("command.patched.stats.packs", "Patching stats by pack, most expensive first:")
+				: translate("command.patched.stats.namespaces", "Patching stats by namespace, most expensive first:");
+
+		for (Map.Entry<String, Counters> entry : entries)
+			c.append("\n  ").append(describe(entry, packs));
+
+		env.sendSuccess(ctx.getSource(), c, false);
+
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private static MutableComponent describe(Map.Entry<String, Counters> entry, boolean pack) {
+		final Counters counters = entry.getValue();
+
+		// Packs only provide patches, while namespaces are where the files being patched are.
+		return pack
+				? translate("command.patched.stats.pack", "%s: %s applied, %s failed, %s parsing, %s applying",
+						entry.getKey(), counters.patchesApplied(), counters.patchesFailed(),
+						formatNanos(counters.patchParseNanos()), formatNanos(counters.applyNanos()))
+				: translate("command.patched.stats.namespace", "%s: %s of %s files patched, %s read, %s in total",
+						entry.getKey(), counters.filesPatched(), counters.filesWrapped(),
+						formatBytes(counters.bytesRead()), formatNanos(counters.totalNanos()));
+	}
+
+	private static <T> int reset(CommandContext<T> ctx, IEnvironment<T> env) {
+		PatchMetrics.reset();
+		env.sendSuccess(ctx.getSource(), translate("command.patched.stats.reset", "Patching stats have been reset."), true);
+		return Command.SINGLE_SUCCESS;
+	}
+
+	// These are plain strings so that the fallback text for vanilla clients comes out right.
+	private static String formatNanos(long nanos) {
+		return nanos >= 1_000_000_000L
+				? "%.2f s".formatted(nanos / 1e9)
+				: "%.1f ms".formatted(nanos / 1e6);
+	}
+
+	private static String formatBytes(long bytes) {
+		if (bytes >= 1024 * 1024) return "%.1f MiB".formatted(bytes / (1024d * 1024));
+		if (bytes >= 1024) return "%.1f KiB".formatted(bytes / 1024d);
+		return bytes + " B";
+	}
+
+	private static String formatDuration(long millis) {
+		final long seconds = millis / 1000;
+		if (seconds < 60) return seconds + "s";
+		if (seconds < 3600) return "%dm %ds".formatted(seconds / 60, seconds % 60);
+		return "%dh %dm".formatted(seconds / 3600, seconds / 60 % 60);
+	}
+}
@@ -0,0 +1,19 @@
+package net.enderturret.patchedmod.mixin;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import net.minecraft.util.profiling.ActiveProfiler;
+
+import net.enderturret.patchedmod.internal.ReloadProfiling;
+
+/**
+ * See {@link ReloadProfiling}.
+ * @author EnderTurret
+ */
+@Mixin(ActiveProfiler.class)
+public interface ActiveProfilerAccess {
+
+	@Accessor
+	public boolean isStarted();
+}
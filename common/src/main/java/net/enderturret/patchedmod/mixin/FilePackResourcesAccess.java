@@ -8,7 +8,7 @@ import net.minecraft.server.packs.FilePackResources;
 import net.enderturret.patchedmod.util.PatchUtil;
 
 /**
- * See {@link PatchUtil#getFileResources}.
+ * See {@link PatchUtil#getFileResources} and {@link PatchUtil#getPackSource}.
  * @author EnderTurret
  */
 @Mixin(FilePackResources.class)
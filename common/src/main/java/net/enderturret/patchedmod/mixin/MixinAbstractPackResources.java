@@ -6,6 +6,7 @@ import org.jetbrains.annotations.Nullable;
 import org.spongepowered.asm.mixin.Mixin;
 
 import net.minecraft.server.packs.AbstractPackResources;
+import net.minecraft.server.packs.PackType;
 
 import net.enderturret.patchedmod.util.IPatchingPackResources;
 import net.enderturret.patchedmod.util.meta.PatchedMetadata;
@@ -20,6 +21,9 @@ public abstract class MixinAbstractPackResources implements IPatchingPackResourc
 	@Nullable
 	private PatchedMetadata patched$meta;
 
+	private int patched$clientSlot = -1;
+	private int patched$serverSlot = -1;
+
 	@Override
 	public PatchedMetadata patchedMetadata() {
 		checkInitialized();
@@ -39,4 +43,17 @@ public abstract class MixinAbstractPackResources implements IPatchingPackResourc
 	public boolean initialized() {
 		return patched$meta != null;
 	}
+
+	@Override
+	public int patched$slot(PackType type) {
+		return type == PackType.CLIENT_RESOURCES ? patched$clientSlot : patched$serverSlot;
+	}
+
+	@Override
+	public void patched$setSlot(PackType type, int slot) {
+		if (type == PackType.CLIENT_RESOURCES)
+			patched$clientSlot = slot;
+		else
+			patched$serverSlot = slot;
+	}
 }
\ No newline at end of file
@@ -3,13 +3,16 @@ package net.enderturret.patchedmod.mixin;
 import java.io.InputStream;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.Predicate;
 
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Coerce;
+import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
 import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
@@ -88,8 +91,16 @@ public abstract class MixinFallbackResourceManager {
 		else
 			throw new IllegalStateException("Neither map is the expected type; did a mixin fail?");
 
-		final IoSupplier<InputStream> sup = MixinCallbacks.chain(streamSupplier, hidden.manager, hidden.type, location, pack);
+		final IoSupplier<InputStream> sup = MixinCallbacks.chainListed(streamSupplier, hidden, location, pack);
 
 		return downstream.call(pack, location, sup, metadataSupplier);
 	}
+
+	@SuppressWarnings("unchecked")
+	@Inject(at = @At("RETURN"), method = "listResources")
+	private void patched$resolveListedTargets(String path, Predicate<ResourceLocation> filter, CallbackInfoReturnable<Map<ResourceLocation, Resource>> cir) {
+		// The returned map is the one we hid ourselves in.
+		if (cir.getReturnValue() instanceof FallbackResourceManagerHidingTreeMap<?, ?> listing)
+			MixinCallbacks.resolveListedTargets((FallbackResourceManagerHidingTreeMap<ResourceLocation, Resource>) listing);
+	}
 }
\ No newline at end of file
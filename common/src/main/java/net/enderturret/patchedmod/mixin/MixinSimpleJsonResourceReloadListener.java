@@ -0,0 +1,45 @@
+package net.enderturret.patchedmod.mixin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+
+import net.minecraft.server.packs.resources.Resource;
+import net.minecraft.server.packs.resources.SimpleJsonResourceReloadListener;
+
+import net.enderturret.patchedmod.internal.PatchedResourceReader;
+
+/**
+ * <p>This mixin lets Json reload listeners (recipes, loot tables, advancements, etc.) use patched Json directly.</p>
+ * <p>
+ * Without it, patched files are serialized after patching, only for {@link SimpleJsonResourceReloadListener#scanDirectory} to parse them again.
+ * If either injection fails, the listener simply reads the serialized data like before.
+ * </p>
+ * @author EnderTurret
+ */
+@Mixin(SimpleJsonResourceReloadListener.class)
+public abstract class MixinSimpleJsonResourceReloadListener {
+
+	@WrapOperation(
+			at = @At(value = "INVOKE", target = "Lnet/minecraft/server/packs/resources/Resource;openAsReader()Ljava/io/BufferedReader;"),
+			method = "scanDirectory")
+	private static BufferedReader patched$openPatchedReader(Resource resource, Operation<BufferedReader> original) throws IOException {
+		return PatchedResourceReader.open(() -> original.call(resource));
+	}
+
+	@WrapOperation(
+			at = @At(value = "INVOKE", target = "Lnet/minecraft/util/GsonHelper;fromJson(Lcom/google/gson/Gson;Ljava/io/Reader;Ljava/lang/Class;)Ljava/lang/Object;"),
+			method = "scanDirectory")
+	private static Object patched$usePatchedJson(Gson gson, Reader reader, Class<?> type, Operation<Object> original) {
+		final JsonElement json = PatchedResourceReader.getPatchedJson(reader);
+		return json != null && type.isInstance(json) ? json : original.call(gson, reader, type);
+	}
+}
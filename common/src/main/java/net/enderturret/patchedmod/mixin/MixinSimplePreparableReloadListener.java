@@ -0,0 +1,33 @@
+package net.enderturret.patchedmod.mixin;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.spongepowered.asm.mixin.Mixin;
+
+import com.llamalad7.mixinextras.injector.wrapmethod.WrapMethod;
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+
+import net.minecraft.server.packs.resources.PreparableReloadListener;
+import net.minecraft.server.packs.resources.ResourceManager;
+import net.minecraft.server.packs.resources.SimplePreparableReloadListener;
+import net.minecraft.util.profiling.ProfilerFiller;
+
+import net.enderturret.patchedmod.internal.ReloadProfiling;
+
+/**
+ * <p>This mixin makes patching show up in the preparation profile of most reload listeners, when reloads are profiled.</p>
+ * <p>
+ * {@link SimplePreparableReloadListener#prepare} runs on the background executor, and is the only thing that does,
+ * so wrapping the executor is enough to know which listener's profiler to use while patching.
+ * </p>
+ * @author EnderTurret
+ */
+@Mixin(SimplePreparableReloadListener.class)
+public abstract class MixinSimplePreparableReloadListener {
+
+	@WrapMethod(method = "reload")
+	private CompletableFuture<Void> patched$profilePatching(PreparableReloadListener.PreparationBarrier barrier, ResourceManager manager, ProfilerFiller preparationsProfiler, ProfilerFiller reloadProfiler, Executor backgroundExecutor, Executor gameExecutor, Operation<CompletableFuture<Void>> original) {
+		return original.call(barrier, manager, preparationsProfiler, reloadProfiler, ReloadProfiling.wrap(backgroundExecutor, preparationsProfiler, ((PreparableReloadListener) (Object) this).getName()), gameExecutor);
+	}
+}
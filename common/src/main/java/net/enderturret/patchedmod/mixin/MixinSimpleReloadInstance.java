@@ -0,0 +1,31 @@
+package net.enderturret.patchedmod.mixin;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import net.minecraft.server.packs.resources.PreparableReloadListener;
+import net.minecraft.server.packs.resources.ReloadInstance;
+import net.minecraft.server.packs.resources.ResourceManager;
+import net.minecraft.server.packs.resources.SimpleReloadInstance;
+import net.minecraft.util.Unit;
+
+import net.enderturret.patchedmod.internal.MixinCallbacks;
+
+/**
+ * This mixin lets Patched know when reloads start (and through them, when they finish), for both resource and data packs.
+ * @author EnderTurret
+ */
+@Mixin(SimpleReloadInstance.class)
+public abstract class MixinSimpleReloadInstance {
+
+	@Inject(at = @At("RETURN"), method = "create")
+	private static void patched$onReloadStarted(ResourceManager resourceManager, List<PreparableReloadListener> listeners, Executor backgroundExecutor, Executor gameExecutor, CompletableFuture<Unit> waitingFor, boolean profiled, CallbackInfoReturnable<ReloadInstance> cir) {
+		MixinCallbacks.onReloadStarted(cir.getReturnValue(), profiled);
+	}
+}
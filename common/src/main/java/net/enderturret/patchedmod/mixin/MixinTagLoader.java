@@ -0,0 +1,40 @@
+package net.enderturret.patchedmod.mixin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+
+import com.google.gson.JsonElement;
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
+
+import net.minecraft.server.packs.resources.Resource;
+import net.minecraft.tags.TagLoader;
+
+import net.enderturret.patchedmod.internal.PatchedResourceReader;
+
+/**
+ * Like {@link MixinSimpleJsonResourceReloadListener}, but for tags, which are loaded separately.
+ * @author EnderTurret
+ */
+@Mixin(TagLoader.class)
+public abstract class MixinTagLoader {
+
+	@WrapOperation(
+			at = @At(value = "INVOKE", target = "Lnet/minecraft/server/packs/resources/Resource;openAsReader()Ljava/io/BufferedReader;"),
+			method = "load")
+	private BufferedReader patched$openPatchedReader(Resource resource, Operation<BufferedReader> original) throws IOException {
+		return PatchedResourceReader.open(() -> original.call(resource));
+	}
+
+	@WrapOperation(
+			at = @At(value = "INVOKE", target = "Lcom/google/gson/JsonParser;parseReader(Ljava/io/Reader;)Lcom/google/gson/JsonElement;", remap = false),
+			method = "load")
+	private JsonElement patched$usePatchedJson(Reader reader, Operation<JsonElement> original) {
+		final JsonElement json = PatchedResourceReader.getPatchedJson(reader);
+		return json != null ? json : original.call(reader);
+	}
+}
@@ -0,0 +1,21 @@
+package net.enderturret.patchedmod.mixin;
+
+import java.nio.file.Path;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import net.minecraft.server.packs.PathPackResources;
+
+import net.enderturret.patchedmod.util.PatchUtil;
+
+/**
+ * See {@link PatchUtil#getPackSource}.
+ * @author EnderTurret
+ */
+@Mixin(PathPackResources.class)
+public interface PathPackResourcesAccess {
+
+	@Accessor
+	public Path getRoot();
+}
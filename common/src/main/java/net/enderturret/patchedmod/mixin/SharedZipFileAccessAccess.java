@@ -1,8 +1,10 @@
 package net.enderturret.patchedmod.mixin;
 
+import java.io.File;
 import java.util.zip.ZipFile;
 
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
 import org.spongepowered.asm.mixin.gen.Invoker;
 
 import net.minecraft.server.packs.FilePackResources.SharedZipFileAccess;
@@ -10,7 +12,7 @@ import net.minecraft.server.packs.FilePackResources.SharedZipFileAccess;
 import net.enderturret.patchedmod.util.PatchUtil;
 
 /**
- * See {@link PatchUtil#getFileResources}.
+ * See {@link PatchUtil#getFileResources} and {@link PatchUtil#getPackSource}.
  * @author EnderTurret
  */
 @Mixin(SharedZipFileAccess.class)
@@ -18,4 +20,7 @@ public interface SharedZipFileAccessAccess {
 
 	@Invoker
 	public ZipFile callGetOrCreateZipFile();
+
+	@Accessor
+	public File getFile();
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package net.enderturret.patchedmod.util;
 
+import org.jetbrains.annotations.ApiStatus.Internal;
+
 import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
 
 import net.enderturret.patchedmod.internal.MixinCallbacks;
 import net.enderturret.patchedmod.util.meta.PatchedMetadata;
@@ -48,6 +51,24 @@ public interface IPatchingPackResources {
 		throw new UnsupportedOperationException("Method was not implemented");
 	}
 
+	/**
+	 * Returns the slot assigned to this pack when the {@code PatchTargetManager} for the specified pack type was last built (internal).
+	 * @param type The pack type.
+	 * @return The slot, or {@code -1} if none was assigned.
+	 */
+	@Internal
+	public default int patched$slot(PackType type) {
+		return -1;
+	}
+
+	/**
+	 * Assigns this pack a slot in the {@code PatchTargetManager} for the specified pack type (internal, optional operation).
+	 * @param type The pack type.
+	 * @param slot The new slot.
+	 */
+	@Internal
+	public default void patched$setSlot(PackType type, int slot) {}
+
 	/**
 	 * Whether the pack has any patches.
 	 * This is an optimization for situations with a lot of mods and hardly any patches (if any).
@@ -1,16 +1,19 @@
 package net.enderturret.patchedmod.util;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.jetbrains.annotations.Nullable;
@@ -23,6 +26,7 @@ import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.packs.FilePackResources;
 import net.minecraft.server.packs.PackResources;
 import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.PathPackResources;
 import net.minecraft.server.packs.VanillaPackResources;
 
 import net.enderturret.patched.Patches;
@@ -31,7 +35,9 @@ import net.enderturret.patched.patch.PatchContext;
 import net.enderturret.patchedmod.Patched;
 import net.enderturret.patchedmod.PatchedTestConditions;
 import net.enderturret.patchedmod.mixin.FilePackResourcesAccess;
+import net.enderturret.patchedmod.mixin.PathPackResourcesAccess;
 import net.enderturret.patchedmod.mixin.SharedZipFileAccessAccess;
+import net.enderturret.patchedmod.util.env.IPlatform;
 
 /**
  * An assortment of utilities related to patching Json data.
@@ -53,10 +59,36 @@ public final class PatchUtil {
 	public static final Gson GSON = Patches.patchGson(CONTEXT)
 			.setPrettyPrinting().create();
 
+	/**
+	 * A compact version of {@link #GSON}, used for {@linkplain #writeCompactJson(JsonElement) serializing} patched data that is only going to be read by the game.
+	 */
+	public static final Gson COMPACT_GSON = Patches.patchGson(CONTEXT).create();
+
+	/**
+	 * Buffers larger than this are not kept around after use, so that one huge file doesn't pin its buffer to a thread forever.
+	 */
+	private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+	private static final ThreadLocal<ReusableByteArrayOutputStream> BUFFERS = ThreadLocal.withInitial(ReusableByteArrayOutputStream::new);
+
 	private static boolean fileResourcesHookWorks = true;
 
 	public static List<ResourceLocation> getResources(PackResources pack, PackType type, String namespace, Predicate<ResourceLocation> filter) {
-		if (pack instanceof FilePackResources fpp) return fileResourcesHookWorks ? getFileResources(fpp, type, namespace, filter) : List.of();
+		final List<ResourceLocation> ret = tryGetResources(pack, type, namespace, filter);
+		return ret != null ? ret : List.of();
+	}
+
+	/**
+	 * Like {@link #getResources(PackResources, PackType, String, Predicate)}, but distinguishes between a namespace with no matching resources and one that could not be listed at all.
+	 * @param pack The pack in question.
+	 * @param type The pack type.
+	 * @param namespace The namespace.
+	 * @param filter A filter for deciding which resources to include in the returned list.
+	 * @return The list of resources under the given namespace, or {@code null} if the pack could not be listed.
+	 */
+	@Nullable
+	public static List<ResourceLocation> tryGetResources(PackResources pack, PackType type, String namespace, Predicate<ResourceLocation> filter) {
+		if (pack instanceof FilePackResources fpp) return fileResourcesHookWorks ? getFileResources(fpp, type, namespace, filter) : null;
 
 		final List<ResourceLocation> ret = new ArrayList<>();
 
@@ -90,6 +122,7 @@ public final class PatchUtil {
 			});
 		} catch (Exception e) {
 			Patched.platform().logger().error("Exception listing resources:", e);
+			return null;
 		}
 
 		return ret;
@@ -99,12 +132,14 @@ public final class PatchUtil {
 	 * This method is a better implementation of
 	 * {@link FilePackResources#listResources(PackType, String, String, net.minecraft.server.packs.PackResources.ResourceOutput)}
 	 * that actually works for what we need -- getting all resources under a particular namespace.
+	 * The entries of the zip are {@linkplain ZipIndex indexed} the first time it is listed.
 	 * @param pack The pack in question.
 	 * @param type The pack type.
 	 * @param namespace The namespace.
 	 * @param filter A filter for deciding which resources to include in the returned list.
-	 * @return The list of resources under the given namespace.
+	 * @return The list of resources under the given namespace, or {@code null} if the zip file could not be accessed.
 	 */
+	@Nullable
 	private static List<ResourceLocation> getFileResources(FilePackResources pack, PackType type, String namespace, Predicate<ResourceLocation> filter) {
 		final List<ResourceLocation> ret = new ArrayList<>();
 
@@ -114,18 +149,12 @@ public final class PatchUtil {
 		} catch (Throwable e) {
 			Patched.platform().logger().error("Accessing FilePackResources ZipFile threw an exception! Listing FilePackResources contents is now disabled. Informational commands for zip packs may not work correctly!", e);
 			fileResourcesHookWorks = false;
-			return List.of();
+			return null;
 		}
 
 		if (zip == null) return ret;
 
-		final String root = type.getDirectory() + "/" + namespace + "/";
-
-		for (Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements(); ) {
-			final ZipEntry entry = it.nextElement();
-			if (entry.isDirectory() || !entry.getName().startsWith(root)) continue;
-
-			final String path = entry.getName().substring(root.length());
+		for (String path : ZipIndex.of(zip).getPaths(type, namespace)) {
 			final ResourceLocation loc = ResourceLocation.tryBuild(namespace, path);
 
 			if (filter.test(loc))
@@ -135,6 +164,26 @@ public final class PatchUtil {
 		return ret;
 	}
 
+	/**
+	 * Returns the file or directory that the given pack is loaded from, for the pack types Minecraft provides.
+	 * See {@link IPlatform#getPackSource(PackResources)}.
+	 * @param pack The pack in question.
+	 * @return The file or directory, or {@code null} if it can't be determined.
+	 */
+	@Nullable
+	public static Path getPackSource(PackResources pack) {
+		try {
+			if (pack instanceof FilePackResources fpp)
+				return ((SharedZipFileAccessAccess) ((FilePackResourcesAccess) fpp).getZipFileAccess()).getFile().toPath();
+			if (pack instanceof PathPackResources ppp)
+				return ((PathPackResourcesAccess) ppp).getRoot();
+		} catch (Throwable e) {
+			Patched.platform().logger().debug("Failed to find the source of {}:", pack.packId(), e);
+		}
+
+		return null;
+	}
+
 	/**
 	 * Attempts to read a string from the given stream as Json, converted to a "pretty" form.
 	 * @param is The stream to read from.
@@ -186,6 +235,28 @@ public final class PatchUtil {
 		return null;
 	}
 
+	/**
+	 * Serializes the given Json without any pretty-printing, directly as UTF-8.
+	 * A per-thread buffer is reused for the serialization, so the only allocation is the returned array, which is exactly as large as the data.
+	 * @param elem The Json to serialize.
+	 * @return The serialized Json.
+	 */
+	public static byte[] writeCompactJson(JsonElement elem) {
+		final ReusableByteArrayOutputStream buffer = BUFFERS.get();
+
+		try {
+			final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+			COMPACT_GSON.toJson(elem, writer);
+			writer.flush();
+
+			return buffer.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to serialize json", e);
+		} finally {
+			buffer.release();
+		}
+	}
+
 	/**
 	 * Reads the data in the given stream as a single string and returns it.
 	 * @param is The stream to read from.
@@ -252,6 +323,26 @@ public final class PatchUtil {
 		return loc;
 	}
 
+	/**
+	 * A {@link ByteArrayOutputStream} that shrinks its buffer back down if it grew too large.
+	 * @author EnderTurret
+	 */
+	private static final class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+		private static final int INITIAL_SIZE = 8192;
+
+		ReusableByteArrayOutputStream() {
+			super(INITIAL_SIZE);
+		}
+
+		void release() {
+			reset();
+
+			if (buf.length > MAX_RETAINED_BUFFER_SIZE)
+				buf = new byte[INITIAL_SIZE];
+		}
+	}
+
 	/**
 	 * @param location The location of the file to test.
 	 * @return {@code true} if the file at the given location supports being patched, based on its name.
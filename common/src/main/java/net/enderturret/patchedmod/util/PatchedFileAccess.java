@@ -7,14 +7,20 @@ import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
+import org.jetbrains.annotations.ApiStatus.Internal;
 import org.jetbrains.annotations.Nullable;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
 import net.minecraft.server.packs.resources.IoSupplier;
 
 import net.enderturret.patched.IFileAccess;
@@ -24,19 +30,38 @@ import net.enderturret.patched.patch.JsonPatch;
 
 public final class PatchedFileAccess implements IFileAccess {
 
-	private static final LoadingCache<PackResources, Map<String, JsonPatch>> CACHE = CacheBuilder.newBuilder()
-			.weakKeys()
-			.build(new CacheLoader<PackResources, Map<String, JsonPatch>>() {
-				@Override
-				public Map<String, JsonPatch> load(PackResources key) throws Exception {
-					return new ConcurrentHashMap<>();
-				}
-			});
+	/**
+	 * The maximum number of included patches to keep parsed at once.
+	 */
+	private static final long MAX_CACHED_INCLUDES = Long.getLong("patched.includeCacheSize", 4096);
+
+	/**
+	 * The included patches of each pack type, which are thrown away whenever that pack type is reloaded.
+	 */
+	private static final Map<PackType, Cache<IncludeKey, JsonPatch>> CACHES = new ConcurrentHashMap<>();
+
+	/**
+	 * The included patches read without a known pack type, which are thrown away whenever anything is reloaded.
+	 */
+	private static volatile Cache<IncludeKey, JsonPatch> untypedCache = newCache();
 
 	private final PackResources pack;
+	private final Cache<IncludeKey, JsonPatch> cache;
 
 	public PatchedFileAccess(PackResources pack) {
 		this.pack = pack;
+		this.cache = untypedCache;
+	}
+
+	/**
+	 * Creates a file access whose included patches are cached until the specified pack type is reloaded.
+	 * @param pack The pack to read included patches from.
+	 * @param type The type of pack the patches are being applied for.
+	 */
+	@Internal
+	public PatchedFileAccess(PackResources pack, PackType type) {
+		this.pack = pack;
+		this.cache = CACHES.computeIfAbsent(type, k -> newCache());
 	}
 
 	public PackResources pack() {
@@ -47,7 +72,7 @@ public final class PatchedFileAccess implements IFileAccess {
 	@Nullable
 	public JsonPatch readIncludedPatch(String path) {
 		try {
-			return CACHE.get(pack).computeIfAbsent(path, k -> {
+			return cache.get(new IncludeKey(pack, path), () -> {
 				final IoSupplier<InputStream> sup = pack.getRootResource("patches", path + ".json.patch");
 				if (sup == null) throw new PatchingException("Patch patches/" + path + ".json.patch doesn't exist; cannot include it.");
 
@@ -59,9 +84,67 @@ public final class PatchedFileAccess implements IFileAccess {
 					throw new UncheckedIOException(e);
 				}
 			});
-		} catch (Exception e) {
-			if (e instanceof RuntimeException re) throw re;
-			throw new RuntimeException(e);
+		} catch (InvalidCacheLoadException e) {
+			// The patch was null.
+			return null;
+		} catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+			if (e.getCause() instanceof RuntimeException re) throw re;
+			if (e.getCause() instanceof Error err) throw err;
+			throw new RuntimeException(e.getCause());
 		}
 	}
-}
\ No newline at end of file
+
+	private static Cache<IncludeKey, JsonPatch> newCache() {
+		return CacheBuilder.newBuilder()
+				.maximumSize(MAX_CACHED_INCLUDES)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * <p>Throws away the cached included patches of the specified pack type, so that changes to them are picked up.</p>
+	 * <p>This is called at the start of every reload. The caches of other pack types are left alone.</p>
+	 * @param type The pack type being reloaded.
+	 * @return The statistics of the pack type's cache up until now.
+	 */
+	@Internal
+	public static CacheStats clearCache(PackType type) {
+		final Cache<IncludeKey, JsonPatch> old = CACHES.put(type, newCache());
+
+		final Cache<IncludeKey, JsonPatch> oldUntyped = untypedCache;
+		untypedCache = newCache();
+		oldUntyped.invalidateAll();
+
+		if (old == null) return new CacheStats(0, 0, 0, 0, 0, 0);
+
+		old.invalidateAll();
+		return old.stats();
+	}
+
+	/**
+	 * @param type The pack type.
+	 * @return The statistics of the pack type's include cache since the start of its current reload.
+	 */
+	@Internal
+	public static CacheStats cacheStats(PackType type) {
+		final Cache<IncludeKey, JsonPatch> cache = CACHES.get(type);
+		return cache != null ? cache.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+	}
+
+	/**
+	 * @param type The pack type.
+	 * @return The number of included patches currently cached for the pack type.
+	 */
+	@Internal
+	public static long cacheSize(PackType type) {
+		final Cache<IncludeKey, JsonPatch> cache = CACHES.get(type);
+		return cache != null ? cache.size() : 0;
+	}
+
+	/**
+	 * The key of a cached included patch. Packs are compared by identity, since a reloaded pack is a different instance.
+	 * @param pack The pack the patch is included from.
+	 * @param path The path of the patch.
+	 */
+	private static record IncludeKey(PackResources pack, String path) {}
+}
@@ -1,13 +1,20 @@
 package net.enderturret.patchedmod.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
+import java.util.function.Function;
 
 import org.jetbrains.annotations.ApiStatus.Internal;
 import org.jetbrains.annotations.Nullable;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
 import net.minecraft.server.packs.resources.IoSupplier;
 
 import net.enderturret.patched.audit.PatchAudit;
@@ -49,6 +56,20 @@ public class PatchingInputStream extends FilterInputStream {
 		this.audit = audit;
 	}
 
+	/**
+	 * <p>Returns the patched Json, if any patches were applied, without serializing it.</p>
+	 * <p>
+	 * This allows consumers that would parse the data as Json anyway to skip serializing and reparsing it.
+	 * Callers that use the returned Json should not also read from this stream.
+	 * </p>
+	 * @return The patched Json, or {@code null} if nothing was patched, in which case the data should be read from this stream as usual.
+	 */
+	@Nullable
+	public JsonElement getPatchedJson() {
+		transform();
+		return in instanceof JsonInputStream jis ? jis.json() : null;
+	}
+
 	@Override
 	public int read() throws IOException {
 		transform();
@@ -97,6 +118,109 @@ public class PatchingInputStream extends FilterInputStream {
 		return super.markSupported();
 	}
 
+	/**
+	 * <p>An {@link InputStream} backed by already-parsed Json, which is only serialized once someone actually reads from it.</p>
+	 * <p>
+	 * It can also be backed by already-serialized Json instead (see {@link #ofSerialized(byte[])}), which is then only parsed if someone asks for the Json.
+	 * See {@link PatchingInputStream#getPatchedJson()}.
+	 * </p>
+	 * @author EnderTurret
+	 */
+	@Internal
+	public static final class JsonInputStream extends InputStream {
+
+		@Nullable
+		private JsonElement json;
+		@Nullable
+		private final byte[] serialized;
+		private final Function<JsonElement, byte[]> serializer;
+		@Nullable
+		private InputStream data;
+
+		private JsonInputStream(@Nullable JsonElement json, @Nullable byte[] serialized, Function<JsonElement, byte[]> serializer) {
+			this.json = json;
+			this.serialized = serialized;
+			this.serializer = serializer;
+		}
+
+		public JsonInputStream(JsonElement json) {
+			this(json, PatchUtil::writeCompactJson);
+		}
+
+		/**
+		 * Creates a new {@code JsonInputStream} that serializes the Json with the specified function, once someone reads from it.
+		 * @param json The Json.
+		 * @param serializer The function to serialize the Json with.
+		 */
+		@Internal
+		public JsonInputStream(JsonElement json, Function<JsonElement, byte[]> serializer) {
+			this(Objects.requireNonNull(json), null, Objects.requireNonNull(serializer));
+		}
+
+		/**
+		 * Creates a new {@code JsonInputStream} with the already-serialized form of the Json.
+		 * @param json The Json.
+		 * @param data The serialized Json.
+		 */
+		public JsonInputStream(JsonElement json, byte[] data) {
+			this(Objects.requireNonNull(json), Objects.requireNonNull(data), PatchUtil::writeCompactJson);
+		}
+
+		/**
+		 * <p>Creates a new {@code JsonInputStream} with only the serialized form of the Json.</p>
+		 * <p>
+		 * The Json is parsed from it the first time {@linkplain PatchingInputStream#getPatchedJson() someone asks for it},
+		 * so that consumers reading the data as Json still get it without the bytes going through their own reader,
+		 * and consumers reading the bytes never pay for parsing it.
+		 * </p>
+		 * @param data The serialized Json.
+		 * @return The new stream.
+		 */
+		@Internal
+		public static JsonInputStream ofSerialized(byte[] data) {
+			return new JsonInputStream(null, Objects.requireNonNull(data), PatchUtil::writeCompactJson);
+		}
+
+		private JsonElement json() {
+			if (json == null)
+				try (InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(serialized), StandardCharsets.UTF_8)) {
+					json = JsonParser.parseReader(reader);
+				} catch (IOException e) {
+					// Can't happen; it's all in memory.
+					throw new IllegalStateException(e);
+				}
+
+			return json;
+		}
+
+		private InputStream data() {
+			if (data == null)
+				data = new ByteArrayInputStream(serialized != null ? serialized : serializer.apply(json));
+
+			return data;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return data().read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return data().read(b, off, len);
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			return data().skip(n);
+		}
+
+		@Override
+		public int available() throws IOException {
+			return data().available();
+		}
+	}
+
 	@FunctionalInterface
 	public static interface PatchFunction {
 		public InputStream patch(InputStream stream, @Nullable PatchAudit audit);
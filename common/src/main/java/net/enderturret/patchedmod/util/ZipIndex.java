@@ -0,0 +1,93 @@
+package net.enderturret.patchedmod.util;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import net.minecraft.server.packs.PackType;
+
+/**
+ * <p>An index of the resources in a zip file (the entries under {@code assets/} and {@code data/}), grouped by pack type and namespace.</p>
+ * <p>
+ * Listing a namespace of a zip pack would otherwise mean going through every entry in the zip (and there can be a lot of those in a mod jar),
+ * every time any namespace is listed.
+ * Indices are built the first time a zip is listed and are held weakly by the {@link ZipFile} they're for,
+ * so they go away when the pack closes its zip (and get rebuilt if it opens it again).
+ * </p>
+ * @author EnderTurret
+ */
+final class ZipIndex {
+
+	private static final LoadingCache<ZipFile, ZipIndex> CACHE = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(new CacheLoader<ZipFile, ZipIndex>() {
+				@Override
+				public ZipIndex load(ZipFile key) throws Exception {
+					return new ZipIndex(key);
+				}
+			});
+
+	private static final PackType[] TYPES = PackType.values();
+
+	private final Map<String, List<String>> pathsByRoot;
+
+	private ZipIndex(ZipFile zip) {
+		final Map<String, List<String>> pathsByRoot = new HashMap<>();
+
+		for (Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements(); ) {
+			final ZipEntry entry = it.nextElement();
+			if (entry.isDirectory()) continue;
+
+			// The root is "<pack type directory>/<namespace>/".
+			// Mod jars are mostly classes and other things that aren't resources, so don't keep those around.
+			final String name = entry.getName();
+			final int typeEnd = name.indexOf('/');
+			if (typeEnd == -1 || !isPackTypeDirectory(name, typeEnd)) continue;
+			final int namespaceEnd = name.indexOf('/', typeEnd + 1);
+			if (namespaceEnd == -1) continue;
+
+			pathsByRoot.computeIfAbsent(name.substring(0, namespaceEnd + 1), k -> new ArrayList<>())
+					.add(name.substring(namespaceEnd + 1));
+		}
+
+		pathsByRoot.replaceAll((k, v) -> List.copyOf(v));
+		this.pathsByRoot = pathsByRoot;
+	}
+
+	private static boolean isPackTypeDirectory(String name, int end) {
+		for (PackType type : TYPES) {
+			final String dir = type.getDirectory();
+			if (dir.length() == end && name.startsWith(dir))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the index of the specified zip file, building it if necessary.
+	 * @param zip The zip file.
+	 * @return The index.
+	 */
+	static ZipIndex of(ZipFile zip) {
+		return CACHE.getUnchecked(zip);
+	}
+
+	/**
+	 * Returns the paths of all files in the specified namespace, relative to the namespace's directory.
+	 * @param type The pack type.
+	 * @param namespace The namespace.
+	 * @return The paths.
+	 */
+	List<String> getPaths(PackType type, String namespace) {
+		return pathsByRoot.getOrDefault(type.getDirectory() + "/" + namespace + "/", List.of());
+	}
+}
@@ -1,5 +1,6 @@
 package net.enderturret.patchedmod.util.env;
 
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
@@ -17,6 +18,7 @@ import net.minecraft.server.packs.PackType;
 import net.minecraft.server.packs.resources.ResourceManager;
 
 import net.enderturret.patchedmod.util.IPatchingPackResources;
+import net.enderturret.patchedmod.util.PatchUtil;
 import net.enderturret.patchedmod.util.meta.PatchedMetadata;
 
 /**
@@ -53,6 +55,14 @@ public interface IPlatform {
 	 */
 	public boolean isModLoaded(String modId, String version);
 
+	/**
+	 * Returns the game directory, which is where Patched keeps its caches.
+	 * @return The game directory.
+	 */
+	public default Path getGameDirectory() {
+		return Path.of("");
+	}
+
 	/**
 	 * Returns the {@link PackOutput} of the given {@link DataGenerator}.
 	 * @param generator The {@code DataGenerator} to fetch the {@code PackOutput} from.
@@ -110,6 +120,17 @@ public interface IPlatform {
 		return null;
 	}
 
+	/**
+	 * Returns the file or directory the specified pack is loaded from, such as a zip file or mod jar.
+	 * This is used to tell whether a pack has changed since its {@link PatchedMetadata} was cached.
+	 * @param pack The pack in question.
+	 * @return The file or directory, or {@code null} if it can't be determined.
+	 */
+	@Nullable
+	public default Path getPackSource(PackResources pack) {
+		return PatchUtil.getPackSource(pack);
+	}
+
 	/**
 	 * <p>
 	 * Returns whether or not the specified pack is actually a group of packs.
@@ -0,0 +1,108 @@
+package net.enderturret.patchedmod.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.enderturret.patchedmod.util.meta.PatchedMetadata;
+
+final class MetadataCacheTest {
+
+	private static final PatchedMetadata METADATA = TestPack.targeting("cached", "cached:patch", "recipes/a").patchedMetadata();
+
+	@TempDir
+	Path dir;
+
+	private TestPlatform platform;
+
+	@BeforeEach
+	void setup() {
+		platform = TestPlatform.install(dir.resolve("game"));
+	}
+
+	private TestPack pack(String id, Path source) {
+		final TestPack ret = new TestPack(id);
+		platform.setSource(ret, source);
+		return ret;
+	}
+
+	private static void touch(Path file, long offsetMillis) throws IOException {
+		Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + offsetMillis));
+	}
+
+	@Test
+	void unchangedPacksHit() throws IOException {
+		final Path zip = Files.writeString(dir.resolve("unchanged.zip"), "data");
+		final TestPack pack = pack("unchanged", zip);
+
+		MetadataCache.put(MetadataCache.fingerprint(pack), METADATA);
+
+		assertSame(METADATA, MetadataCache.get(MetadataCache.fingerprint(pack)));
+	}
+
+	@Test
+	void changedSizeOrModificationTimeMisses() throws IOException {
+		final Path zip = Files.writeString(dir.resolve("changed.zip"), "data");
+		final TestPack pack = pack("changed", zip);
+
+		MetadataCache.put(MetadataCache.fingerprint(pack), METADATA);
+
+		touch(zip, 10_000);
+		assertNull(MetadataCache.get(MetadataCache.fingerprint(pack)));
+
+		MetadataCache.put(MetadataCache.fingerprint(pack), METADATA);
+		final FileTime modified = Files.getLastModifiedTime(zip);
+		Files.writeString(zip, "more data");
+		Files.setLastModifiedTime(zip, modified);
+		assertNull(MetadataCache.get(MetadataCache.fingerprint(pack)));
+	}
+
+	@Test
+	void directoriesAreCheckedByTheirPackMcmeta() throws IOException {
+		final Path packDir = Files.createDirectories(dir.resolve("directory"));
+		final Path mcmeta = Files.writeString(packDir.resolve("pack.mcmeta"), "{}");
+		final TestPack pack = pack("directory", packDir);
+
+		MetadataCache.put(MetadataCache.fingerprint(pack), METADATA);
+
+		// Other files don't matter, since the metadata only comes from the pack.mcmeta.
+		Files.writeString(packDir.resolve("other.json"), "{}");
+		touch(packDir, 10_000);
+		assertSame(METADATA, MetadataCache.get(MetadataCache.fingerprint(pack)));
+
+		touch(mcmeta, 10_000);
+		assertNull(MetadataCache.get(MetadataCache.fingerprint(pack)));
+	}
+
+	@Test
+	void packsSharingAFileHaveTheirOwnEntries() throws IOException {
+		final Path zip = Files.writeString(dir.resolve("shared.zip"), "data");
+		final TestPack first = pack("first", zip);
+		final TestPack second = pack("second", zip);
+
+		final MetadataCache.Fingerprint fingerprint = MetadataCache.fingerprint(first);
+		assertNotNull(fingerprint);
+		assertNotEquals(fingerprint.key(), MetadataCache.fingerprint(second).key());
+
+		MetadataCache.put(fingerprint, METADATA);
+		assertNull(MetadataCache.get(MetadataCache.fingerprint(second)));
+		assertEquals(METADATA, MetadataCache.get(MetadataCache.fingerprint(first)));
+	}
+
+	@Test
+	void packsWithoutAFileAreNotCached() {
+		assertNull(MetadataCache.fingerprint(new TestPack("nowhere")));
+		assertNull(MetadataCache.fingerprint(pack("missing", dir.resolve("missing.zip"))));
+	}
+}
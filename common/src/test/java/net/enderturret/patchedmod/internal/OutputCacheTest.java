@@ -0,0 +1,92 @@
+package net.enderturret.patchedmod.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.hash.HashCode;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackType;
+
+import net.enderturret.patched.patch.JsonPatch;
+import net.enderturret.patchedmod.internal.MixinCallbacks.Entry;
+import net.enderturret.patchedmod.internal.MixinCallbacks.PatchStep;
+import net.enderturret.patchedmod.util.PatchUtil;
+
+final class OutputCacheTest {
+
+	private static final PackType TYPE = PackType.SERVER_DATA;
+	private static final ResourceLocation FILE = ResourceLocation.withDefaultNamespace("recipes/a.json");
+	private static final byte[] DATA = "{\"a\":1}".getBytes(StandardCharsets.UTF_8);
+
+	private static final String ADD_B = "{\"op\":\"add\",\"path\":\"/b\",\"value\":2}";
+	private static final String ADD_C = "{\"op\":\"add\",\"path\":\"/c\",\"value\":3}";
+
+	@TempDir
+	Path gameDir;
+
+	@BeforeEach
+	void setup() {
+		TestPlatform.install(gameDir);
+	}
+
+	private static PatchStep step(TestPack pack, String patchName, String patch) {
+		pack.add(TYPE, ResourceLocation.parse(patchName), patch);
+		return new PatchStep(new Entry(pack), PatchUtil.GSON.fromJson(patch, JsonPatch.class), patchName, null, null);
+	}
+
+	@Test
+	void sameInputsGiveTheSameKey() {
+		final List<PatchStep> steps = List.of(step(new TestPack("pack"), "minecraft:recipes/a.json.patch", ADD_B));
+		final HashCode key = new OutputCache().key(TYPE, FILE, DATA, steps);
+
+		assertNotNull(key);
+		// The cache is kept across restarts, so the key can't depend on anything that only lives as long as the game does.
+		final List<PatchStep> again = List.of(step(new TestPack("pack"), "minecraft:recipes/a.json.patch", ADD_B));
+		assertEquals(key, new OutputCache().key(TYPE, FILE, DATA, again));
+	}
+
+	@Test
+	void differentInputsGiveDifferentKeys() {
+		final OutputCache cache = new OutputCache();
+		final TestPack pack = new TestPack("pack");
+		final List<PatchStep> steps = List.of(step(pack, "minecraft:recipes/a.json.patch", ADD_B));
+		final HashCode key = cache.key(TYPE, FILE, DATA, steps);
+
+		assertNotEquals(key, cache.key(TYPE, FILE, "{\"a\":2}".getBytes(StandardCharsets.UTF_8), steps), "data");
+		assertNotEquals(key, cache.key(TYPE, ResourceLocation.withDefaultNamespace("recipes/b.json"), DATA, steps), "file");
+		assertNotEquals(key, cache.key(PackType.CLIENT_RESOURCES, FILE, DATA, steps), "pack type");
+		assertNotEquals(key, cache.key(TYPE, FILE, DATA, List.of()), "no patches");
+
+		final List<PatchStep> otherPatch = List.of(step(new TestPack("pack"), "minecraft:recipes/a.json.patch", ADD_C));
+		assertNotEquals(key, cache.key(TYPE, FILE, DATA, otherPatch), "patch contents");
+
+		final List<PatchStep> otherPack = List.of(step(new TestPack("other"), "minecraft:recipes/a.json.patch", ADD_B));
+		assertNotEquals(key, cache.key(TYPE, FILE, DATA, otherPack), "pack");
+	}
+
+	@Test
+	void patchOrderChangesTheKey() {
+		final OutputCache cache = new OutputCache();
+		final PatchStep first = step(new TestPack("first"), "minecraft:recipes/a.json.patch", ADD_B);
+		final PatchStep second = step(new TestPack("second"), "minecraft:recipes/a.json.patch", ADD_C);
+
+		assertNotEquals(cache.key(TYPE, FILE, DATA, List.of(first, second)), cache.key(TYPE, FILE, DATA, List.of(second, first)));
+	}
+
+	@Test
+	void unreadablePatchesHaveNoKey() {
+		final PatchStep missing = new PatchStep(new Entry(new TestPack("empty")), PatchUtil.GSON.fromJson(ADD_B, JsonPatch.class), "minecraft:recipes/a.json.patch", null, null);
+		assertNull(new OutputCache().key(TYPE, FILE, DATA, List.of(missing)));
+	}
+}
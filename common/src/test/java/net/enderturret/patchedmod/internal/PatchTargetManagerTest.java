@@ -0,0 +1,83 @@
+package net.enderturret.patchedmod.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+
+final class PatchTargetManagerTest {
+
+	private static final PackType TYPE = PackType.SERVER_DATA;
+	private static final ResourceLocation FILE = ResourceLocation.withDefaultNamespace("recipes/a");
+	private static final ResourceLocation OTHER = ResourceLocation.withDefaultNamespace("tags/a");
+
+	@TempDir
+	static Path gameDir;
+
+	// Lowest priority first, like the resource manager lists them.
+	private final TestPack low = TestPack.targeting("low", "low:patch", "/recipes/.*/");
+	private final TestPack mid = TestPack.targeting("mid", "mid:first", "recipes/a", "mid:second", "/recipes/a|recipes/c/");
+	private final TestPack high = TestPack.targeting("high", "high:patch", "recipes/a");
+	private final PatchTargetManager manager = new PatchTargetManager(TYPE, List.of(low, mid, high));
+
+	@BeforeAll
+	static void setup() {
+		TestPlatform.install(gameDir);
+	}
+
+	@Test
+	void targetsAreInPriorityAndMetadataOrder() {
+		final FileTargets targets = manager.getTargets(FILE, low);
+
+		assertEquals(List.of(low, mid, high), targets.packs());
+		assertEquals(List.of("low:patch"), targets.get(low));
+		assertEquals(List.of("mid:first", "mid:second"), targets.get(mid));
+		assertEquals(List.of("high:patch"), targets.get(high));
+	}
+
+	@Test
+	void targetsFromLowerPacksAreSkipped() {
+		// The lowest pack's target comes first, so stopping at it would lose everything above it too.
+		final FileTargets fromMid = manager.getTargets(FILE, mid);
+		assertEquals(List.of(mid, high), fromMid.packs());
+		assertEquals(List.of(), fromMid.get(low));
+		assertEquals(List.of("mid:first", "mid:second"), fromMid.get(mid));
+
+		assertEquals(List.of(high), manager.getTargets(FILE, high).packs());
+	}
+
+	@Test
+	void filesWithoutTargetsAreEmpty() {
+		assertTrue(manager.getTargets(OTHER, mid).isEmpty());
+		assertTrue(manager.getTargets(ResourceLocation.fromNamespaceAndPath("other", "recipes/a"), low).isEmpty());
+		assertSame(FileTargets.EMPTY, new PatchTargetManager(TYPE, List.of(new TestPack("plain"))).getTargets(FILE, low));
+	}
+
+	@Test
+	void batchesMatchSingleLookups() {
+		final List<ResourceLocation> files = List.of(FILE, ResourceLocation.withDefaultNamespace("recipes/b"), FILE, FILE, ResourceLocation.fromNamespaceAndPath("other", "recipes/a"));
+		final List<PackResources> froms = List.of(low, mid, mid, high, low);
+		final TargetBatch batch = manager.getTargets(files, froms);
+
+		assertEquals(files.size(), batch.size());
+
+		for (int i = 0; i < files.size(); i++) {
+			final FileTargets single = manager.getTargets(files.get(i), froms.get(i));
+			final FileTargets batched = batch.get(i);
+
+			assertEquals(single.packs(), batched.packs(), "packs of file " + i);
+			for (TestPack pack : List.of(low, mid, high))
+				assertEquals(single.get(pack), batched.get(pack), "patches from " + pack + " for file " + i);
+		}
+	}
+}
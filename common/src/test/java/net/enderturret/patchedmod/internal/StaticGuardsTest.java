@@ -0,0 +1,81 @@
+package net.enderturret.patchedmod.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackType;
+
+import net.enderturret.patchedmod.PatchedTestConditions;
+
+final class StaticGuardsTest {
+
+	private static final PackType TYPE = PackType.SERVER_DATA;
+
+	private static final AtomicInteger CHANGING_CALLS = new AtomicInteger();
+
+	@BeforeAll
+	static void setup() {
+		PatchedTestConditions.registerSimple(ResourceLocation.fromNamespaceAndPath("test", "constant"), true, value -> value.getAsBoolean());
+		PatchedTestConditions.registerSimple(ResourceLocation.fromNamespaceAndPath("test", "changing"), value -> {
+			CHANGING_CALLS.incrementAndGet();
+			return value.getAsBoolean();
+		});
+	}
+
+	private static JsonElement json(String json) {
+		return JsonParser.parseString(json.replace('\'', '"'));
+	}
+
+	@Test
+	void failingConstantGuardsSkipThePatch() {
+		final JsonElement patch = json("[{'op':'test','type':'test:constant','value':false},{'op':'add','path':'/a','value':1}]");
+		assertEquals(json("{'op':'test','type':'test:constant','value':false}"), StaticGuards.findFailingGuard(patch, TYPE));
+
+		final JsonElement single = json("{'op':'test','type':'test:constant','value':false}");
+		assertEquals(single, StaticGuards.findFailingGuard(single, TYPE));
+	}
+
+	@Test
+	void passingGuardsKeepThePatch() {
+		assertNull(StaticGuards.findFailingGuard(json("[{'op':'test','type':'test:constant','value':true},{'op':'add','path':'/a','value':1}]"), TYPE));
+		assertNull(StaticGuards.findFailingGuard(json("[{'op':'test','type':'test:constant','value':true},{'op':'test','type':'test:constant','value':true}]"), TYPE));
+	}
+
+	@Test
+	void invertedGuardsAreInverted() {
+		final JsonElement guard = json("{'op':'test','type':'test:constant','value':true,'inverse':true}");
+		assertEquals(guard, StaticGuards.findFailingGuard(json("[" + guard + "]"), TYPE));
+		assertNull(StaticGuards.findFailingGuard(json("[{'op':'test','type':'test:constant','value':false,'inverse':true}]"), TYPE));
+	}
+
+	@Test
+	void onlyLeadingGuardsAreChecked() {
+		// Once the patch starts changing the document, later tests could depend on it.
+		assertNull(StaticGuards.findFailingGuard(json("[{'op':'add','path':'/a','value':1},{'op':'test','type':'test:constant','value':false}]"), TYPE));
+		// Tests against the document aren't guards either.
+		assertNull(StaticGuards.findFailingGuard(json("[{'op':'test','path':'/a','value':1},{'op':'test','type':'test:constant','value':false}]"), TYPE));
+	}
+
+	@Test
+	void conditionsThatArentReloadConstantAreLeftAlone() {
+		final int calls = CHANGING_CALLS.get();
+
+		assertNull(StaticGuards.findFailingGuard(json("[{'op':'test','type':'test:changing','value':false},{'op':'add','path':'/a','value':1}]"), TYPE));
+		assertEquals(calls, CHANGING_CALLS.get());
+	}
+
+	@Test
+	void brokenGuardsAreLeftForPatching() {
+		// This fails when evaluated, which should be reported when the patch is applied instead.
+		assertNull(StaticGuards.findFailingGuard(json("[{'op':'test','type':'test:constant'},{'op':'add','path':'/a','value':1}]"), TYPE));
+	}
+}
@@ -0,0 +1,80 @@
+package net.enderturret.patchedmod.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import net.enderturret.patchedmod.internal.PatchTargetManager.BakedTarget;
+import net.enderturret.patchedmod.util.meta.IPattern;
+import net.enderturret.patchedmod.util.meta.PatchTarget.Target;
+
+final class TargetMatcherTest {
+
+	private static BakedTarget target(int priority, IPattern... path) {
+		return new BakedTarget(new Target(List.of(new IPattern.Simple("minecraft")), List.of(path)), "patch" + priority, null, priority);
+	}
+
+	private static IPattern simple(String path) {
+		return new IPattern.Simple(path);
+	}
+
+	private static IPattern regex(String pattern) {
+		return new IPattern.Regex(Pattern.compile(pattern));
+	}
+
+	private static int[] matchInto(TargetMatcher matcher, String path) {
+		final int[] out = new int[3 + matcher.maxMatches()];
+		final int found = matcher.match(path, out, 3);
+		return Arrays.copyOfRange(out, 3, 3 + found);
+	}
+
+	@Test
+	void simpleAndRegexMatchesStayInTargetOrder() {
+		final TargetMatcher matcher = new TargetMatcher(List.of(
+				target(0, regex("recipes/.*")),
+				target(1, simple("recipes/a")),
+				target(2, regex("recipes/a")),
+				target(3, simple("recipes/b")),
+				target(4, regex("loot_tables/.*"))));
+
+		assertArrayEquals(new int[] { 0, 1, 2 }, matcher.match("recipes/a"));
+		assertArrayEquals(new int[] { 0, 3 }, matcher.match("recipes/b"));
+		assertArrayEquals(new int[] { 4 }, matcher.match("loot_tables/c"));
+		assertArrayEquals(new int[0], matcher.match("tags/d"));
+
+		// Writing into a shared array has to give the same results.
+		assertArrayEquals(new int[] { 0, 1, 2 }, matchInto(matcher, "recipes/a"));
+		assertArrayEquals(new int[] { 0, 3 }, matchInto(matcher, "recipes/b"));
+		assertArrayEquals(new int[0], matchInto(matcher, "tags/d"));
+	}
+
+	@Test
+	void targetMatchingSeveralWaysIsOnlyReturnedOnce() {
+		final TargetMatcher matcher = new TargetMatcher(List.of(
+				target(0, simple("recipes/a"), simple("recipes/a"), regex("recipes/.*")),
+				target(1, simple("recipes/a"))));
+
+		assertArrayEquals(new int[] { 0, 1 }, matcher.match("recipes/a"));
+		assertArrayEquals(new int[] { 0 }, matcher.match("recipes/b"));
+		assertEquals(3, matcher.maxMatches());
+	}
+
+	@Test
+	void uncombinableRegexesAreStillMatchedInOrder() {
+		// Flags and backreferences can't be merged into the combined pattern, so each regex is tried on its own.
+		final TargetMatcher matcher = new TargetMatcher(List.of(
+				target(0, simple("recipes/a")),
+				target(1, new IPattern.Regex(Pattern.compile("RECIPES/.*", Pattern.CASE_INSENSITIVE))),
+				target(2, regex("recipes/(a)\\1?"))));
+
+		assertArrayEquals(new int[] { 0, 1, 2 }, matcher.match("recipes/a"));
+		assertArrayEquals(new int[] { 1, 2 }, matcher.match("recipes/aa"));
+		assertArrayEquals(new int[] { 1 }, matcher.match("recipes/b"));
+		assertArrayEquals(new int[] { 1, 2 }, matchInto(matcher, "recipes/aa"));
+	}
+}
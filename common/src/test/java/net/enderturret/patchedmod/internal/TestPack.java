@@ -0,0 +1,165 @@
+package net.enderturret.patchedmod.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackLocationInfo;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.metadata.MetadataSectionSerializer;
+import net.minecraft.server.packs.repository.PackSource;
+import net.minecraft.server.packs.resources.IoSupplier;
+
+import net.enderturret.patchedmod.util.IPatchingPackResources;
+import net.enderturret.patchedmod.util.meta.IPattern;
+import net.enderturret.patchedmod.util.meta.PatchTarget;
+import net.enderturret.patchedmod.util.meta.PatchedMetadata;
+
+/**
+ * A pack that keeps its files in memory, standing in for the mixed-in vanilla packs.
+ * @author EnderTurret
+ */
+final class TestPack implements PackResources, IPatchingPackResources {
+
+	private final PackLocationInfo location;
+	private final Map<PackType, Map<ResourceLocation, byte[]>> files = new EnumMap<>(PackType.class);
+	private final Map<PackType, Integer> slots = new EnumMap<>(PackType.class);
+
+	private PatchedMetadata metadata;
+
+	TestPack(String id, PatchedMetadata metadata) {
+		this.location = new PackLocationInfo(id, Component.literal(id), PackSource.BUILT_IN, Optional.empty());
+		this.metadata = metadata;
+	}
+
+	TestPack(String id) {
+		this(id, PatchedMetadata.CURRENT_VERSION);
+	}
+
+	/**
+	 * Creates a pack whose metadata targets files with the specified patches.
+	 * @param id The id of the pack.
+	 * @param targets The patches and the files they target, as alternating patch and path pattern pairs. Paths in slashes are regexes.
+	 * @return The pack.
+	 */
+	static TestPack targeting(String id, String... targets) {
+		final PatchTarget[] ret = new PatchTarget[targets.length / 2];
+
+		for (int i = 0; i < ret.length; i++) {
+			final String path = targets[i * 2 + 1];
+			final IPattern pattern = path.length() > 1 && path.startsWith("/") && path.endsWith("/")
+					? new IPattern.Regex(Pattern.compile(path.substring(1, path.length() - 1)))
+					: new IPattern.Simple(path);
+
+			ret[i] = new PatchTarget(Optional.empty(), targets[i * 2],
+					List.of(new PatchTarget.Target(List.of(new IPattern.Simple("minecraft")), List.of(pattern))));
+		}
+
+		return new TestPack(id, new PatchedMetadata((byte) 1, List.of(ret)));
+	}
+
+	TestPack add(PackType type, ResourceLocation location, String data) {
+		files.computeIfAbsent(type, k -> new HashMap<>()).put(location, data.getBytes(StandardCharsets.UTF_8));
+		return this;
+	}
+
+	@Nullable
+	private static IoSupplier<InputStream> supply(@Nullable byte[] data) {
+		return data == null ? null : () -> new ByteArrayInputStream(data);
+	}
+
+	@Override
+	@Nullable
+	public IoSupplier<InputStream> getRootResource(String... elements) {
+		return null;
+	}
+
+	@Override
+	@Nullable
+	public IoSupplier<InputStream> getResource(PackType type, ResourceLocation location) {
+		final Map<ResourceLocation, byte[]> files = this.files.get(type);
+		return files == null ? null : supply(files.get(location));
+	}
+
+	@Override
+	public void listResources(PackType type, String namespace, String path, ResourceOutput output) {
+		final Map<ResourceLocation, byte[]> files = this.files.get(type);
+		if (files == null) return;
+
+		final String prefix = path.isEmpty() || path.endsWith("/") ? path : path + "/";
+
+		files.forEach((loc, data) -> {
+			if (loc.getNamespace().equals(namespace) && loc.getPath().startsWith(prefix))
+				output.accept(loc, supply(data));
+		});
+	}
+
+	@Override
+	public Set<String> getNamespaces(PackType type) {
+		final Set<String> ret = new HashSet<>();
+		final Map<ResourceLocation, byte[]> files = this.files.get(type);
+
+		if (files != null)
+			for (ResourceLocation loc : files.keySet())
+				ret.add(loc.getNamespace());
+
+		return ret;
+	}
+
+	@Override
+	@Nullable
+	public <T> T getMetadataSection(MetadataSectionSerializer<T> deserializer) {
+		return null;
+	}
+
+	@Override
+	public PackLocationInfo location() {
+		return location;
+	}
+
+	@Override
+	public void close() {}
+
+	@Override
+	public PatchedMetadata patchedMetadata() {
+		return metadata;
+	}
+
+	@Override
+	public void setPatchedMetadata(PatchedMetadata value) {
+		metadata = value;
+	}
+
+	@Override
+	public boolean initialized() {
+		return true;
+	}
+
+	@Override
+	public int patched$slot(PackType type) {
+		return slots.getOrDefault(type, -1);
+	}
+
+	@Override
+	public void patched$setSlot(PackType type, int slot) {
+		slots.put(type, slot);
+	}
+
+	@Override
+	public String toString() {
+		return "TestPack { id = %s }".formatted(location.id());
+	}
+}
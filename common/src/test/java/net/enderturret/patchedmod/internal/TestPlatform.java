@@ -0,0 +1,100 @@
+package net.enderturret.patchedmod.internal;
+
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.minecraft.data.DataGenerator;
+import net.minecraft.data.PackOutput;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+
+import net.enderturret.patchedmod.Patched;
+import net.enderturret.patchedmod.util.env.IPlatform;
+
+/**
+ * A platform for tests, which keeps its caches in a temporary directory and lets the file each pack comes from be set.
+ * @author EnderTurret
+ */
+final class TestPlatform implements IPlatform {
+
+	private final Logger logger = LoggerFactory.getLogger("Patched");
+	private final Path gameDirectory;
+	private final Map<PackResources, Path> sources = new IdentityHashMap<>();
+
+	private TestPlatform(Path gameDirectory) {
+		this.gameDirectory = gameDirectory;
+	}
+
+	/**
+	 * Makes a new test platform the current one.
+	 * @param gameDirectory The directory to keep caches in.
+	 * @return The platform.
+	 */
+	static TestPlatform install(Path gameDirectory) {
+		final TestPlatform ret = new TestPlatform(gameDirectory);
+		Patched.setPlatform(ret);
+		return ret;
+	}
+
+	TestPlatform setSource(PackResources pack, Path source) {
+		sources.put(pack, source);
+		return this;
+	}
+
+	@Override
+	public Logger logger() {
+		return logger;
+	}
+
+	@Override
+	public boolean isPhysicalClient() {
+		return false;
+	}
+
+	@Override
+	public boolean isModLoaded(String modId) {
+		return false;
+	}
+
+	@Override
+	public boolean isModLoaded(String modId, String version) {
+		return false;
+	}
+
+	@Override
+	public Path getGameDirectory() {
+		return gameDirectory;
+	}
+
+	@Override
+	public PackOutput getPackOutput(DataGenerator generator) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getName(PackResources pack) {
+		return pack.packId();
+	}
+
+	@Override
+	@Nullable
+	public Path getPackSource(PackResources pack) {
+		return sources.get(pack);
+	}
+
+	@Override
+	public boolean needsSwapNamespaceAndPath(PackResources pack) {
+		return false;
+	}
+
+	@Override
+	public Function<ResourceLocation, ResourceLocation> getRenamer(PackResources pack, String namespace) {
+		return Function.identity();
+	}
+}
@@ -1,5 +1,9 @@
 package net.enderturret.patchedmod.fabric;
 
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import org.jetbrains.annotations.Nullable;
@@ -8,10 +12,12 @@ import org.slf4j.LoggerFactory;
 
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.loader.api.ModContainer;
 import net.fabricmc.loader.api.Version;
 import net.fabricmc.loader.api.VersionParsingException;
 import net.fabricmc.loader.api.metadata.CustomValue;
 import net.fabricmc.loader.api.metadata.ModMetadata;
+import net.fabricmc.loader.api.metadata.ModOrigin;
 
 import net.minecraft.data.DataGenerator;
 import net.minecraft.data.PackOutput;
@@ -25,6 +31,11 @@ final class FabricPlatform implements IPlatform {
 
 	private final Logger logger = LoggerFactory.getLogger("Patched");
 
+	/**
+	 * Parsed versions used by {@link #isModLoaded(String, String)}, so that the same versions aren't parsed over and over.
+	 */
+	private final Map<String, Optional<Version>> versions = new ConcurrentHashMap<>();
+
 	@Override
 	public Logger logger() {
 		return logger;
@@ -42,18 +53,26 @@ final class FabricPlatform implements IPlatform {
 
 	@Override
 	public boolean isModLoaded(String modId, String version) {
-		final Version version2;
-		try {
-			version2 = Version.parse(version);
-		} catch (VersionParsingException e) {
-			return false;
-		}
+		final Version version2 = versions.computeIfAbsent(version, k -> {
+			try {
+				return Optional.of(Version.parse(k));
+			} catch (VersionParsingException e) {
+				return Optional.empty();
+			}
+		}).orElse(null);
+
+		if (version2 == null) return false;
 
 		return FabricLoader.getInstance().getModContainer(modId)
 				.map(mc -> mc.getMetadata().getVersion().compareTo(version2))
 				.orElse(-1) >= 0;
 	}
 
+	@Override
+	public Path getGameDirectory() {
+		return FabricLoader.getInstance().getGameDir();
+	}
+
 	@Override
 	public PackOutput getPackOutput(DataGenerator generator) {
 		return generator.vanillaPackOutput;
@@ -101,6 +120,20 @@ final class FabricPlatform implements IPlatform {
 		return PatchedMetadata.of(cv, CustomValueOps.INSTANCE, mod.getName() + " (" + mod.getId() + ")");
 	}
 
+	@Override
+	@Nullable
+	public Path getPackSource(PackResources pack) {
+		final ModMetadata mod = getModMetadataFromPack(pack);
+		if (mod != null)
+			return FabricLoader.getInstance().getModContainer(mod.getId())
+					.map(ModContainer::getOrigin)
+					.filter(origin -> origin.getKind() == ModOrigin.Kind.PATH && origin.getPaths().size() == 1)
+					.map(origin -> origin.getPaths().get(0))
+					.orElse(null);
+
+		return IPlatform.super.getPackSource(pack);
+	}
+
 	@Override
 	public boolean needsSwapNamespaceAndPath(PackResources pack) {
 		// Fabric implementations surprisingly throw no errors, unlike Minecraft.
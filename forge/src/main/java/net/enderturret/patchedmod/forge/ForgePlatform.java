@@ -1,6 +1,9 @@
 package net.enderturret.patchedmod.forge;
 
+import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import org.apache.maven.artifact.versioning.ArtifactVersion;
@@ -21,6 +24,7 @@ import net.neoforged.api.distmarker.Dist;
 import net.neoforged.fml.ModContainer;
 import net.neoforged.fml.ModList;
 import net.neoforged.fml.loading.FMLEnvironment;
+import net.neoforged.fml.loading.FMLPaths;
 
 import net.enderturret.patchedmod.util.env.IPlatform;
 import net.enderturret.patchedmod.util.meta.PatchedMetadata;
@@ -29,6 +33,11 @@ final class ForgePlatform implements IPlatform {
 
 	private final Logger logger = LoggerFactory.getLogger("Patched");
 
+	/**
+	 * Parsed versions used by {@link #isModLoaded(String, String)}, so that the same versions aren't parsed over and over.
+	 */
+	private final Map<String, DefaultArtifactVersion> versions = new ConcurrentHashMap<>();
+
 	@Override
 	public Logger logger() {
 		return logger;
@@ -49,12 +58,17 @@ final class ForgePlatform implements IPlatform {
 		return ModList.get().getModContainerById(modId)
 				.map(mc -> {
 					final ArtifactVersion theirVersion = mc.getModInfo().getVersion();
-					final DefaultArtifactVersion realVersion = new DefaultArtifactVersion(version);
+					final DefaultArtifactVersion realVersion = versions.computeIfAbsent(version, DefaultArtifactVersion::new);
 					return theirVersion.compareTo(realVersion);
 				})
 				.orElse(-1) >= 0;
 	}
 
+	@Override
+	public Path getGameDirectory() {
+		return FMLPaths.GAMEDIR.get();
+	}
+
 	@Override
 	public PackOutput getPackOutput(DataGenerator generator) {
 		return generator.getPackOutput();
@@ -96,6 +110,16 @@ final class ForgePlatform implements IPlatform {
 		return null;
 	}
 
+	@Override
+	@Nullable
+	public Path getPackSource(PackResources pack) {
+		final Optional<? extends ModContainer> owningMod = findModNameFromModFile(pack);
+		if (owningMod.isPresent())
+			return owningMod.get().getModInfo().getOwningFile().getFile().getFilePath();
+
+		return IPlatform.super.getPackSource(pack);
+	}
+
 	@Override
 	public boolean needsSwapNamespaceAndPath(PackResources pack) {
 		return true;
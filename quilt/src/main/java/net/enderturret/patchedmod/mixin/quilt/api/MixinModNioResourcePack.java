@@ -5,6 +5,8 @@ import java.util.Objects;
 import org.jetbrains.annotations.Nullable;
 import org.spongepowered.asm.mixin.Mixin;
 
+import net.minecraft.server.packs.PackType;
+
 import net.fabricmc.fabric.impl.resource.loader.ModNioResourcePack;
 
 import net.enderturret.patchedmod.mixin.MixinAbstractPackResources;
@@ -21,6 +23,9 @@ public abstract class MixinModNioResourcePack implements IPatchingPackResources
 	@Nullable
 	private PatchedMetadata patched$meta;
 
+	private int patched$clientSlot = -1;
+	private int patched$serverSlot = -1;
+
 	@Override
 	public PatchedMetadata patchedMetadata() {
 		checkInitialized();
@@ -40,4 +45,17 @@ public abstract class MixinModNioResourcePack implements IPatchingPackResources
 	public boolean initialized() {
 		return patched$meta != null;
 	}
+
+	@Override
+	public int patched$slot(PackType type) {
+		return type == PackType.CLIENT_RESOURCES ? patched$clientSlot : patched$serverSlot;
+	}
+
+	@Override
+	public void patched$setSlot(PackType type, int slot) {
+		if (type == PackType.CLIENT_RESOURCES)
+			patched$clientSlot = slot;
+		else
+			patched$serverSlot = slot;
+	}
 }
\ No newline at end of file
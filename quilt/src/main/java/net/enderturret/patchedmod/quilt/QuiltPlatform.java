@@ -1,7 +1,10 @@
 package net.enderturret.patchedmod.quilt;
 
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import org.jetbrains.annotations.Nullable;
@@ -28,6 +31,11 @@ final class QuiltPlatform implements IPlatform {
 
 	private final Logger logger = LoggerFactory.getLogger("Patched");
 
+	/**
+	 * Parsed versions used by {@link #isModLoaded(String, String)}, so that the same versions aren't parsed over and over.
+	 */
+	private final Map<String, Version> versions = new ConcurrentHashMap<>();
+
 	@Override
 	public Logger logger() {
 		return logger;
@@ -46,10 +54,15 @@ final class QuiltPlatform implements IPlatform {
 	@Override
 	public boolean isModLoaded(String modId, String version) {
 		return QuiltLoader.getModContainer(modId)
-				.map(mc -> mc.metadata().version().compareTo(Version.of(version)))
+				.map(mc -> mc.metadata().version().compareTo(versions.computeIfAbsent(version, Version::of)))
 				.orElse(-1) >= 0;
 	}
 
+	@Override
+	public Path getGameDirectory() {
+		return QuiltLoader.getGameDir();
+	}
+
 	@Override
 	public PackOutput getPackOutput(DataGenerator generator) {
 		return generator.vanillaPackOutput;